@@ -0,0 +1,154 @@
+package benchmark;
+
+import constants.SolveStatus;
+import solvers.SearchStatistics;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The outcome of one run of a benchmark: one solver on one problem
+ * instance. A run that threw has no status and carries the error instead.
+ */
+public class BenchmarkResult {
+
+    private static final String[] COLUMNS = {
+            "map", "agents", "seed", "solver", "status", "success", "cost",
+            "runtimeMs", "expanded", "generated", "heuristicMs", "error"
+    };
+
+    private final String map;
+    private final int agents;
+    private final long seed;
+    private final String solver;
+    private final SolveStatus status;
+    private final double cost;
+    private final SearchStatistics statistics;
+    private final String error;
+
+    /**
+     * Constructor for a run that finished, with or without a solution
+     * @param map title of the map
+     * @param agents number of agents
+     * @param seed seed the agents were generated with
+     * @param solver name of the solver
+     * @param status how the solve ended
+     * @param cost cost of the solution, ignored unless it was solved
+     * @param statistics statistics of the solve
+     */
+    public BenchmarkResult(String map, int agents, long seed, String solver, SolveStatus status, double cost,
+                           SearchStatistics statistics) {
+        this.map = map;
+        this.agents = agents;
+        this.seed = seed;
+        this.solver = solver;
+        this.status = status;
+        this.cost = cost;
+        this.statistics = statistics;
+        this.error = null;
+    }
+
+    /**
+     * Constructor for a run that threw before its solve could end
+     * @param map title of the map
+     * @param agents number of agents
+     * @param seed seed the agents were generated with
+     * @param solver name of the solver
+     * @param error what was thrown
+     */
+    public BenchmarkResult(String map, int agents, long seed, String solver, Throwable error) {
+        this.map = map;
+        this.agents = agents;
+        this.seed = seed;
+        this.solver = solver;
+        this.status = null;
+        this.cost = Double.NaN;
+        this.statistics = new SearchStatistics();
+        this.error = error.toString();
+    }
+
+    public boolean isSuccess() {
+        return status == SolveStatus.SOLVED;
+    }
+
+    public SolveStatus getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Returns the header line of the CSV output
+     * @return the column names, separated by commas
+     */
+    public static String csvHeader() {
+        return String.join(",", COLUMNS);
+    }
+
+    /**
+     * Returns the result as a line of CSV, in the columns of csvHeader()
+     * @return the CSV line
+     */
+    public String toCsv() {
+        Object[] values = values();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) line.append(',');
+            if (values[i] instanceof String) line.append(csvField((String) values[i]));
+            else if (values[i] != null) line.append(values[i]);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Returns the result as a single-line JSON object, with the keys of csvHeader()
+     * @return the JSON line
+     */
+    public String toJson() {
+        Object[] values = values();
+        StringBuilder line = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) line.append(',');
+            line.append('"').append(COLUMNS[i]).append("\":");
+            if (values[i] instanceof String) line.append(jsonString((String) values[i]));
+            else line.append(values[i]);
+        }
+        return line.append('}').toString();
+    }
+
+    private Object[] values() {
+        return new Object[] {
+                map, agents, seed, solver, status == null ? "ERROR" : status.name(), isSuccess(),
+                isSuccess() ? (Object) cost : null, millis(statistics.getRuntimeNanos()),
+                statistics.getExpanded(), statistics.getGenerated(), millis(statistics.getHeuristicBuildNanos()),
+                error
+        };
+    }
+
+    private static BigDecimal millis(long nanos) {
+        return BigDecimal.valueOf(nanos, 6).setScale(3, RoundingMode.HALF_UP);
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder result = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') result.append('\\').append(c);
+            else if (c < 0x20) result.append(String.format("\\u%04x", (int) c));
+            else result.append(c);
+        }
+        return result.append('"').toString();
+    }
+
+    @Override
+    public String toString() {
+        return toCsv();
+    }
+}
@@ -0,0 +1,377 @@
+package benchmark;
+
+import constants.SolveStatus;
+import solvers.ConstrainedSolver;
+import solvers.SearchBudget;
+import solvers.Solver;
+import utilities.Agent;
+import utilities.Connected;
+import utilities.Graph;
+import utilities.ProblemInstance;
+import utilities.Util;
+import visuals.GlobalSolvers;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Command-line benchmark that runs solvers from the GlobalSolvers registry
+ * on every problem instance of a matrix of maps, agent counts and seeds.
+ * Runs are spread over a fixed number of worker threads, each run with a
+ * new solver and its own budget, and every result is written as a CSV or
+ * JSON line as soon as its run finishes. Before the matrix, every solver
+ * solves the first instance a few times so that measured runs are not
+ * slowed down by the JIT compiler.
+ *
+ * Example, from the root of the project:
+ *   java benchmark.BenchmarkRunner --maps maps --agents 5,10,20 --seeds 1-50
+ *       --solvers "Operator Decomposition,CBS" --time-limit 30000 --out results.csv
+ */
+public class BenchmarkRunner {
+
+    private static final long DEFAULT_TIME_LIMIT = 60000;
+    private static final int DEFAULT_WARMUP = 3;
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java benchmark.BenchmarkRunner --maps <files or directories> --agents <counts>",
+            "           --seeds <seeds> --solvers <names> [options]",
+            "  --maps             .map files or directories of them, separated by commas",
+            "  --agents           agent counts, such as 5,10,20 or 5-50:5",
+            "  --seeds            seeds of the random agents, such as 1,2,3 or 1-100",
+            "  --solvers          solver names, separated by commas, or all",
+            "  --connected        4 or 8, default 8",
+            "  --threads          runs at once, default the number of processors",
+            "  --time-limit       milliseconds per run, default " + DEFAULT_TIME_LIMIT + ", 0 for none",
+            "  --expansion-limit  expansions per run, default none",
+            "  --warmup           warm-up solves per solver, default " + DEFAULT_WARMUP,
+            "  --format           csv or json, default csv",
+            "  --out              file to write the results to, default standard output",
+            "  --list             prints the solver names and exits");
+
+    private final List<File> maps;
+    private final List<Integer> agentCounts;
+    private final List<Long> seeds;
+    private final List<String> solverNames;
+    private Connected connectedness = Connected.EIGHT;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int warmupIterations = DEFAULT_WARMUP;
+    private SearchBudget budget = SearchBudget.UNLIMITED.withTimeLimit(DEFAULT_TIME_LIMIT);
+    private boolean json;
+
+    private PrintStream out;
+    private final AtomicInteger runs = new AtomicInteger();
+    private final AtomicInteger solved = new AtomicInteger();
+
+    /**
+     * Constructor that creates a benchmark of every solver on every
+     * combination of map, agent count and seed
+     * @param maps the map files
+     * @param agentCounts the numbers of agents
+     * @param seeds the seeds the agents of each instance are generated with
+     * @param solverNames names of solvers in GlobalSolvers.solverFactories
+     */
+    public BenchmarkRunner(List<File> maps, List<Integer> agentCounts, List<Long> seeds, List<String> solverNames) {
+        if (maps.isEmpty() || agentCounts.isEmpty() || seeds.isEmpty() || solverNames.isEmpty())
+            throw new IllegalArgumentException("Maps, agent counts, seeds and solvers must not be empty");
+        for (String name : solverNames) {
+            Supplier<Solver> factory = GlobalSolvers.solverFactories.get(name);
+            if (factory == null) throw new IllegalArgumentException("Unknown solver \"" + name + "\", known solvers: "
+                    + GlobalSolvers.solverFactories.keySet());
+            if (!(factory.get() instanceof ConstrainedSolver))
+                throw new IllegalArgumentException("Solver \"" + name + "\" does not support budgets");
+        }
+        this.maps = new ArrayList<>(maps);
+        this.agentCounts = new ArrayList<>(agentCounts);
+        this.seeds = new ArrayList<>(seeds);
+        this.solverNames = new ArrayList<>(solverNames);
+    }
+
+    public static void main(String[] args) throws FileNotFoundException, InterruptedException {
+        List<String> arguments = Arrays.asList(args);
+        if (arguments.contains("--list")) {
+            for (String name : GlobalSolvers.solverFactories.keySet()) System.out.println(name);
+            return;
+        }
+        BenchmarkRunner runner;
+        String outFile;
+        try {
+            runner = fromArguments(args);
+            outFile = option(args, "--out");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        if (outFile == null) {
+            runner.run(System.out);
+        } else {
+            try (PrintStream file = new PrintStream(new FileOutputStream(outFile), false, "UTF-8")) {
+                runner.run(file);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Sets the connectedness of the graphs built from the maps
+     * @param connectedness the connectedness, EIGHT by default
+     */
+    public void setConnectedness(Connected connectedness) {
+        this.connectedness = connectedness;
+    }
+
+    /**
+     * Sets the number of runs that solve at the same time
+     * @param threads the number of worker threads
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("Threads must be positive: " + threads);
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of unrecorded solves of the first instance each
+     * solver makes before the benchmark starts
+     * @param warmupIterations the number of warm-up solves, 0 for none
+     */
+    public void setWarmupIterations(int warmupIterations) {
+        if (warmupIterations < 0) throw new IllegalArgumentException("Warm-up must not be negative: " + warmupIterations);
+        this.warmupIterations = warmupIterations;
+    }
+
+    /**
+     * Sets the budget of each run, one minute of wall time by default
+     * @param budget the budget
+     */
+    public void setBudget(SearchBudget budget) {
+        if (budget == null) throw new IllegalArgumentException("Budget must not be null, use SearchBudget.UNLIMITED");
+        this.budget = budget;
+    }
+
+    /**
+     * Sets whether results are written as JSON lines instead of CSV
+     * @param json true for JSON lines
+     */
+    public void setJson(boolean json) {
+        this.json = json;
+    }
+
+    /**
+     * Runs the benchmark, writing a line for each run as it finishes.
+     * Lines are in the order runs finish, not the order of the matrix.
+     * @param out where to write the results
+     * @throws FileNotFoundException if a map does not exist
+     * @throws InterruptedException if interrupted while waiting for runs
+     */
+    public void run(PrintStream out) throws FileNotFoundException, InterruptedException {
+        this.out = out;
+        runs.set(0);
+        solved.set(0);
+        List<Graph> graphs = new ArrayList<>();
+        for (File map : maps) graphs.add(new Graph(connectedness, map));
+        long start = System.nanoTime();
+        warmUp(graphs.get(0));
+        if (!json) write(BenchmarkResult.csvHeader());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Semaphore queued = new Semaphore(2 * threads); // keeps instances from being generated far ahead of the runs
+        try {
+            for (int m = 0; m < maps.size(); m++) {
+                String mapName = maps.get(m).getName();
+                Graph graph = graphs.get(m);
+                for (int agentCount : agentCounts) {
+                    for (long seed : seeds) {
+                        List<Agent> agents;
+                        try {
+                            agents = generateAgents(graph, agentCount, seed);
+                        } catch (IllegalArgumentException e) {
+                            for (String solver : solverNames)
+                                record(new BenchmarkResult(mapName, agentCount, seed, solver, e));
+                            continue;
+                        }
+                        for (String solver : solverNames) {
+                            queued.acquire();
+                            pool.execute(() -> {
+                                try {
+                                    record(solve(mapName, graph, agents, seed, solver));
+                                } finally {
+                                    queued.release();
+                                }
+                            });
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        System.err.printf("%d runs, %d solved, in %.1fs%n", runs.get(), solved.get(),
+                (System.nanoTime() - start) / 1e9);
+    }
+
+    // solves the first instance with each solver, so measured runs use compiled code
+    private void warmUp(Graph graph) {
+        if (warmupIterations == 0) return;
+        List<Agent> agents;
+        try {
+            agents = generateAgents(graph, agentCounts.get(0), seeds.get(0));
+        } catch (IllegalArgumentException e) {
+            return; // reported by the benchmark itself
+        }
+        for (String solver : solverNames) {
+            for (int i = 0; i < warmupIterations; i++) solve(maps.get(0).getName(), graph, agents, seeds.get(0), solver);
+        }
+    }
+
+    private BenchmarkResult solve(String mapName, Graph graph, List<Agent> agents, long seed, String solverName) {
+        try {
+            ConstrainedSolver solver = (ConstrainedSolver) GlobalSolvers.solverFactories.get(solverName).get();
+            ProblemInstance problem = new ProblemInstance(graph, new ArrayList<>(agents));
+            SolveStatus status = solver.solve(problem, budget, null);
+            double cost = status == SolveStatus.SOLVED ? solver.getPath().cost() : Double.NaN;
+            return new BenchmarkResult(mapName, agents.size(), seed, solverName, status, cost, solver.getStatistics());
+        } catch (RuntimeException | OutOfMemoryError | StackOverflowError e) {
+            return new BenchmarkResult(mapName, agents.size(), seed, solverName, e);
+        }
+    }
+
+    // agents are generated on one thread, as they come from the shared Util.random
+    private static List<Agent> generateAgents(Graph graph, int agentCount, long seed) {
+        Util.random = new Random(seed);
+        return Collections.unmodifiableList(new ProblemInstance(graph, agentCount, null).getAgents());
+    }
+
+    private void record(BenchmarkResult result) {
+        runs.incrementAndGet();
+        if (result.isSuccess()) solved.incrementAndGet();
+        write(json ? result.toJson() : result.toCsv());
+    }
+
+    private synchronized void write(String line) {
+        out.println(line);
+        out.flush();
+    }
+
+    /**
+     * Creates a benchmark from command-line arguments, described by the usage text
+     * @param args the arguments
+     * @return the benchmark
+     */
+    public static BenchmarkRunner fromArguments(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--")) throw new IllegalArgumentException("Expected an option: " + args[i]);
+            if (i + 1 == args.length) throw new IllegalArgumentException("Missing value of " + args[i]);
+            if (!USAGE.contains("  " + args[i] + " ") || args[i].equals("--list"))
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+        }
+
+        List<File> maps = new ArrayList<>();
+        for (String path : required(args, "--maps").split(",")) maps.addAll(mapFiles(new File(path.trim())));
+        List<Integer> agentCounts = new ArrayList<>();
+        for (long count : parseNumbers(required(args, "--agents"))) agentCounts.add((int) count);
+        List<Long> seeds = parseNumbers(required(args, "--seeds"));
+        List<String> solverNames = new ArrayList<>();
+        String solvers = required(args, "--solvers");
+        if (solvers.equals("all")) solverNames.addAll(GlobalSolvers.solverFactories.keySet());
+        else for (String name : solvers.split(",")) solverNames.add(name.trim());
+
+        BenchmarkRunner runner = new BenchmarkRunner(maps, agentCounts, seeds, solverNames);
+        String connected = option(args, "--connected");
+        if (connected != null) {
+            if (connected.equals("4")) runner.setConnectedness(Connected.FOUR);
+            else if (!connected.equals("8")) throw new IllegalArgumentException("Connectedness must be 4 or 8: " + connected);
+        }
+        String threads = option(args, "--threads");
+        if (threads != null) runner.setThreads(parseInt(threads));
+        String warmup = option(args, "--warmup");
+        if (warmup != null) runner.setWarmupIterations(parseInt(warmup));
+        SearchBudget budget = SearchBudget.UNLIMITED;
+        String timeLimit = option(args, "--time-limit");
+        long millis = timeLimit == null ? DEFAULT_TIME_LIMIT : parseLong(timeLimit);
+        if (millis > 0) budget = budget.withTimeLimit(millis);
+        String expansionLimit = option(args, "--expansion-limit");
+        if (expansionLimit != null) budget = budget.withExpansionLimit(parseLong(expansionLimit));
+        runner.setBudget(budget);
+        String format = option(args, "--format");
+        if (format != null && !format.equals("csv") && !format.equals("json"))
+            throw new IllegalArgumentException("Format must be csv or json: " + format);
+        runner.setJson("json".equals(format));
+        return runner;
+    }
+
+    private static String option(String[] args, String name) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals(name)) return args[i + 1];
+        }
+        return null;
+    }
+
+    private static String required(String[] args, String name) {
+        String value = option(args, name);
+        if (value == null) throw new IllegalArgumentException("Missing option " + name);
+        return value;
+    }
+
+    private static List<File> mapFiles(File path) {
+        if (!path.isDirectory()) {
+            if (!path.isFile()) throw new IllegalArgumentException("No such map: " + path);
+            return Collections.singletonList(path);
+        }
+        File[] files = path.listFiles((dir, name) -> name.endsWith(".map"));
+        if (files == null || files.length == 0) throw new IllegalArgumentException("No .map files in " + path);
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    // numbers separated by commas, each a single number, a range first-last or a range with a step first-last:step
+    private static List<Long> parseNumbers(String text) {
+        List<Long> numbers = new ArrayList<>();
+        for (String part : text.split(",")) {
+            part = part.trim();
+            int dash = part.indexOf('-', 1);
+            if (dash < 0) {
+                numbers.add(parseLong(part));
+                continue;
+            }
+            int colon = part.indexOf(':', dash);
+            long first = parseLong(part.substring(0, dash));
+            long last = parseLong(part.substring(dash + 1, colon < 0 ? part.length() : colon));
+            long step = colon < 0 ? 1 : parseLong(part.substring(colon + 1));
+            if (step < 1 || last < first) throw new IllegalArgumentException("Bad range: " + part);
+            for (long n = first; n <= last; n += step) numbers.add(n);
+        }
+        return numbers;
+    }
+
+    private static int parseInt(String text) {
+        long value = parseLong(text);
+        if (value != (int) value) throw new IllegalArgumentException("Number too large: " + text);
+        return (int) value;
+    }
+
+    private static long parseLong(String text) {
+        try {
+            return Long.parseLong(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + text);
+        }
+    }
+}
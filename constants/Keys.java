@@ -1,5 +1,5 @@
 package constants;
 
 public enum Keys {
-    RESERVATIONS, PREPROCESS
+    RESERVATIONS, PREPROCESS, PACKED_CLOSED_LIST, PAIRWISE_HEURISTIC, THREADS
 }
@@ -0,0 +1,5 @@
+package constants;
+
+public enum SolveStatus {
+    SOLVED, NO_SOLUTION, TIMEOUT, NODE_LIMIT, OUT_OF_MEMORY, CANCELLED
+}
@@ -0,0 +1,21 @@
+package solvers;
+
+/**
+ * Token that another thread uses to stop a solve in progress. Solvers
+ * check it between expansions and return CANCELLED.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * Asks the solves holding this token to stop
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -8,45 +8,89 @@ import utilities.Conflict;
 import utilities.Coordinate;
 import utilities.Node;
 import utilities.Path;
+import utilities.PersistentIntMultiMap;
 
 import java.util.*;
 
+/**
+ * Table of the coordinates occupied by the paths of groups of agents, used
+ * to find the groups that a move conflicts with. Coordinates are packed into
+ * long keys of time step and node index in persistent hash tries: one of the
+ * groups at each coordinate, and one of the groups that moved along each edge
+ * at each time step, so that swaps are found with a single lookup. A third
+ * trie holds the time step from which each group waits at its goal.
+ * Queries do not allocate.
+ *
+ * Paths can be removed as well as added, so that a caller whose paths change
+ * one at a time, like a node of a constraint tree, only updates the changed
+ * paths. Every conflict found while adding is kept in a heap ordered by time
+ * step; conflicts of removed paths are dropped when they reach its top.
+ *
+ * The tries and the heap share their unchanged parts between copies, so
+ * deepCopy takes constant time, apart from the list of indexed paths, and
+ * changing one path of a copy costs about the length of the path times the
+ * depth of the tries. A constraint tree node can thus keep a table of its
+ * own, derived from the table of its parent; the parts that only tables of
+ * discarded nodes refer to are garbage collected.
+ */
 public class ConflictAvoidanceTable {
 
     public static final int NO_CONFLICT = -1;
     public static final int NO_GROUP = -1;
 
+    private static final long VERTEX = 0; // second key of the occupant table
+    private static final long ARRIVALS = Long.MIN_VALUE; // second key of the groups with a destination at a node
+    private static final int MIN_CONFLICT_LIMIT = 64;
+    private static final int[] EMPTY_GROUPS = new int[0];
+
     protected int lastTimeStep;
 
-    // coordinate => prev(s)
-    protected Map<Coordinate, List<Coordinate>> coordinateTable;
-    // coordinate => group at coordinate
-    protected Map<Coordinate, List<Integer>> groupOccupantTable;
+    // (time step, node) => groups at the node, in the order they were added
+    private PersistentIntMultiMap occupants;
+    // (time step, node) and previous node => groups that moved from the previous node to the node
+    private PersistentIntMultiMap moves;
+    // node and ARRIVALS => groups whose destination is the node; node and group => time
+    // steps from which the group stays at the node
+    private PersistentIntMultiMap destinations;
+    private int destinationCount;
+    private int horizon; // latest time step of a coordinate added since the last clear
 
-    protected Map<Node, int[]> agentDestinations;
-    //rprotected List<Integer> relevantGroups;
     protected Map<Integer, Integer> agentGroups;
 
-    private static final int DEST_TIME_STEP = 0;
-    private static final int DEST_GROUP = 1;
-
-    private Conflict earliestConflict;
+    // conflicts found while adding, earliest first, some of them of removed paths
+    private ConflictHeap conflicts;
+    private int conflictCount;
+    private int conflictLimit; // number of conflicts above which those of removed paths are discarded
+    private List<Path> indexedPaths;
 
-
-    public ConflictAvoidanceTable(Map<Coordinate, List<Coordinate>> coordinateTable,
-                                  Map<Coordinate, List<Integer>> groupOccupantTable,
-                                  Map<Node, int[]> agentDestinations,
-                                  int lastTimeStep,
-                                  Map<Integer,Integer> agentGroups) {
-        this.coordinateTable = coordinateTable;
-        this.groupOccupantTable = groupOccupantTable;
-        this.agentDestinations = agentDestinations;
-        this.lastTimeStep = lastTimeStep;
-        this.agentGroups = agentGroups;
+    public ConflictAvoidanceTable() {
+        occupants = new PersistentIntMultiMap();
+        moves = new PersistentIntMultiMap();
+        destinations = new PersistentIntMultiMap();
+        agentGroups = new HashMap<>();
+        conflictLimit = MIN_CONFLICT_LIMIT;
+        indexedPaths = new ArrayList<>();
     }
 
-    public ConflictAvoidanceTable() {
-        this(new HashMap<>(), new HashMap<>(), new HashMap<>(), 0, new HashMap<>());
+    /**
+     * Constructor that copies the paths and destinations of another table,
+     * but not its agent groups. The copy shares the tries and the conflicts
+     * of the other table, so it takes constant time apart from the list of
+     * indexed paths.
+     * @param other the table to copy
+     */
+    protected ConflictAvoidanceTable(ConflictAvoidanceTable other) {
+        occupants = other.occupants.copy();
+        moves = other.moves.copy();
+        destinations = other.destinations.copy();
+        destinationCount = other.destinationCount;
+        horizon = other.horizon;
+        lastTimeStep = other.lastTimeStep;
+        conflicts = other.conflicts;
+        conflictCount = other.conflictCount;
+        conflictLimit = other.conflictLimit;
+        indexedPaths = new ArrayList<>(other.indexedPaths);
+        agentGroups = new HashMap<>();
     }
 
     public boolean isValid(State state) {
@@ -59,8 +103,16 @@ public class ConflictAvoidanceTable {
         return false;
     }
 
+    /**
+     * Returns the earliest conflict between the paths in the table
+     * @return the conflict with the smallest time step, null if there is none
+     */
     public Conflict getEarliestConflict() {
-        return earliestConflict;
+        while (conflicts != null && !holds(conflicts.conflict)) {
+            conflicts = ConflictHeap.merge(conflicts.left, conflicts.right);
+            conflictCount--;
+        }
+        return conflicts == null ? null : conflicts.conflict;
     }
     /**
      * Returns the group that the state conflicts with, if any
@@ -68,20 +120,70 @@ public class ConflictAvoidanceTable {
      * @return the group that the state conflicts with, -1 otherwise
      */
     public int violation(SingleAgentState state) {
-        Coordinate thisCoordinate = state.coordinate();
-        Coordinate prevCoordinate = state.isRoot() ?
-                null : ((SingleAgentState) state.predecessor()).coordinate();
+        Node previous = state.isRoot() ?
+                null : ((SingleAgentState) state.predecessor()).coordinate().getNode();
+        return violation(state.coordinate().getNode(), previous, state.timeStep(), state.getAgentGoal());
+    }
 
-        int result = coordinateConflict(thisCoordinate, state.getAgentGoal());
-        if (result == NO_CONFLICT) {
-            result = findTransposition(prevCoordinate, thisCoordinate, state.getAgentGoal());
+    /**
+     * Returns the group that an agent conflicts with by moving from previous
+     * to node, arriving at the given time step. Does not allocate.
+     * @param node the node the agent arrives at
+     * @param previous the node the agent leaves, or null at the root
+     * @param timeStep the time step of arrival
+     * @param agentGoal the group of the agent
+     * @return the group that the move conflicts with, -1 otherwise
+     */
+    public int violation(Node node, Node previous, int timeStep, int agentGoal) {
+        int nodeIndex = node.getIndexInGraph();
+        int result = otherGroup(occupants.get(key(timeStep, nodeIndex), VERTEX), agentGoal);
+        if (result == NO_CONFLICT && previous != null) {
+            // a group that moved the other way between the same time steps
+            long swapKey = key(timeStep, previous.getIndexInGraph());
+            result = otherGroup(moves.get(swapKey, nodeIndex), agentGoal);
         }
         if (result == NO_CONFLICT) {
-            result = destinationConflict(thisCoordinate, state.getAgentGoal());
+            result = destinationConflict(nodeIndex, timeStep, agentGoal);
         }
         return result;
     }
 
+    /**
+     * Returns the number of distinct groups that an agent conflicts with by
+     * moving from previous to node, arriving at the given time step. Does
+     * not allocate.
+     * @param node the node the agent arrives at
+     * @param previous the node the agent leaves, or null at the root
+     * @param timeStep the time step of arrival
+     * @param agentGoal the group of the agent
+     * @return the number of groups that the move conflicts with
+     */
+    public int violationCount(Node node, Node previous, int timeStep, int agentGoal) {
+        int nodeIndex = node.getIndexInGraph();
+        int[] vertex = occupants.get(key(timeStep, nodeIndex), VERTEX);
+        int[] swaps = previous == null ? EMPTY_GROUPS : moves.get(key(timeStep, previous.getIndexInGraph()), nodeIndex);
+        int[] arrivals = destinations.get(nodeIndex, ARRIVALS);
+        int count = 0;
+        for (int i = 0; i < vertex.length; i++) {
+            if (vertex[i] != agentGoal && indexOf(vertex, vertex[i]) == i) count++;
+        }
+        for (int i = 0; i < swaps.length; i++) {
+            if (swaps[i] != agentGoal && indexOf(swaps, swaps[i]) == i && indexOf(vertex, swaps[i]) == -1) count++;
+        }
+        for (int group : arrivals) {
+            if (group != agentGoal && indexOf(vertex, group) == -1 && indexOf(swaps, group) == -1
+                    && arrived(nodeIndex, group, timeStep)) count++;
+        }
+        return count;
+    }
+
+    private static int indexOf(int[] groups, int group) {
+        for (int i = 0; i < groups.length; i++) {
+            if (groups[i] == group) return i;
+        }
+        return -1;
+    }
+
     /**
      * Returns the group that the state conflicts with, if any
      * @param state
@@ -96,66 +198,87 @@ public class ConflictAvoidanceTable {
         return result;
     }
 
-    private int findTransposition(Coordinate previous, Coordinate coordinate, int agentGoal) {
-        int conflictingGroup = NO_CONFLICT;
-        if (!(previous == null || coordinateTable.get(previous) == null)) {
-            coordinate.setTimeStep(coordinate.getTimeStep() - 1);
-            previous.setTimeStep(previous.getTimeStep() + 1);
-            int index = coordinateTable.containsKey(previous) ?
-                    coordinateTable.get(previous).indexOf(coordinate) : -1;
-            List<Coordinate> possibleTranspositions = new ArrayList<>();
-            if (index != -1) {
-                int len = coordinateTable.get(previous).size();
-                for (int i = index; i < len && conflictingGroup == NO_CONFLICT; i++) {
-                    Coordinate possibleConflictCoordinate = coordinateTable.get(previous).get(i);
-                    List<Integer> possibleConflicts = groupOccupantTable.get(possibleConflictCoordinate);
-                    Iterator<Integer> groupIter = possibleConflicts.iterator();
-                    while (groupIter.hasNext() && conflictingGroup == NO_CONFLICT) {
-                        int possibleConflict = groupIter.next();
-                        if (possibleConflict != agentGoal) {
-                            conflictingGroup = possibleConflict;
-                        }
-                        //if (relevantGroups.contains(agentGroups.get(possibleConflict)) && possibleConflict != agentGoal) {
-                        //    conflictingGroup = possibleConflict;
-                        //}
-                    }
-                }
-            }
-            coordinate.setTimeStep(coordinate.getTimeStep() + 1);
-            previous.setTimeStep(previous.getTimeStep() - 1);
+    // the first group in the list that is not the agent's own
+    private static int otherGroup(int[] groups, int agentGoal) {
+        for (int group : groups) {
+            if (group != agentGoal) return group;
         }
-        return conflictingGroup;
+        return NO_CONFLICT;
     }
 
-    private int coordinateConflict(Coordinate coordinate, int agentGoal) {
-        if (groupOccupantTable.get(coordinate) == null) {
-            return NO_CONFLICT;
+    // a group other than the agent's that stays at the node from the time step or before
+    private int destinationConflict(int nodeIndex, int timeStep, int agentGoal) {
+        for (int group : destinations.get(nodeIndex, ARRIVALS)) {
+            if (group != agentGoal && arrived(nodeIndex, group, timeStep)) return group;
         }
+        return NO_CONFLICT;
+    }
 
-        for (Integer possibleConflict : groupOccupantTable.get(coordinate)) {
-            if (possibleConflict != agentGoal) {
-                return possibleConflict;
-            }
-            //if (relevantGroups.contains(agentGroups.get(possibleConflict)) && possibleConflict != agentGoal) {
-            //    return possibleConflict;
-            //}
+    /**
+     * Returns the earliest time step from which a group other than the
+     * agent's stays at a node, its destination
+     * @param nodeIndex the index of the node in the graph
+     * @param agentGoal the group of the agent
+     * @return the time step, or Integer.MAX_VALUE if the node is the destination of no other group
+     */
+    protected int earliestArrival(int nodeIndex, int agentGoal) {
+        int earliest = Integer.MAX_VALUE;
+        for (int group : destinations.get(nodeIndex, ARRIVALS)) {
+            if (group == agentGoal) continue;
+            for (int arrival : destinations.get(nodeIndex, group)) earliest = Math.min(earliest, arrival);
         }
+        return earliest;
+    }
 
-        return NO_CONFLICT;
+    private boolean arrived(int nodeIndex, int group, int timeStep) {
+        for (int arrival : destinations.get(nodeIndex, group)) {
+            if (arrival <= timeStep) return true;
+        }
+        return false;
     }
 
-    private int destinationConflict(Coordinate coordinate, int agentGoal) {
-        int conflictingGroup = NO_CONFLICT;
-        Node node = coordinate.getNode();
-        if (agentDestinations.containsKey(node)) {
-            int[] data = agentDestinations.get(node);
-            if (data[DEST_TIME_STEP] <= coordinate.getTimeStep()) {
-                conflictingGroup = data[DEST_GROUP];
+    // whether a conflict found while adding still holds between the paths in the table
+    private boolean holds(Conflict conflict) {
+        int timeStep = conflict.getTimeStep();
+        int group1 = conflict.getGroup1();
+        int group2 = conflict.getGroup2();
+        int node1 = conflict.getGroupNode(group1).getIndexInGraph();
+        int node2 = conflict.getGroupNode(group2).getIndexInGraph();
+        switch (conflict.getType()) {
+            case COLLISION:
+                return occupants.contains(key(timeStep, node1), VERTEX, group1)
+                        && occupants.contains(key(timeStep, node1), VERTEX, group2);
+            case TRANSPOSITION:
+                // group2 moved from node2 to node1, group1 the other way
+                return moves.contains(key(timeStep, node1), node2, group2)
+                        && moves.contains(key(timeStep, node2), node1, group1);
+            case DESTINATION:
+                return arrived(node1, group1, timeStep)
+                        && occupants.contains(key(timeStep, node1), VERTEX, group2);
+            default:
+                return false;
+        }
+    }
+
+    private void addConflict(Conflict conflict) {
+        conflicts = ConflictHeap.merge(conflicts, new ConflictHeap(conflict, null, null));
+        conflictCount++;
+        if (conflictCount > conflictLimit) {
+            List<Conflict> found = new ArrayList<>();
+            ConflictHeap.collect(conflicts, found);
+            conflicts = null;
+            conflictCount = 0;
+            for (Conflict held : found) {
+                if (!holds(held)) continue;
+                conflicts = ConflictHeap.merge(conflicts, new ConflictHeap(held, null, null));
+                conflictCount++;
             }
+            conflictLimit = Math.max(MIN_CONFLICT_LIMIT, 2 * conflictCount);
         }
-        //boolean relevantConflict = relevantGroups.contains(agentGroups.get(conflictingGroup)) ;
-        //return relevantConflict ? conflictingGroup : NO_CONFLICT;
-        return conflictingGroup;
+    }
+
+    private static long key(int timeStep, int nodeIndex) {
+        return ((long) timeStep << 32) | (nodeIndex & 0xffffffffL);
     }
 
     public void addPath(Path path) {
@@ -172,6 +295,41 @@ public class ConflictAvoidanceTable {
         }
     }
 
+    /**
+     * Removes a path that was added, with its destinations and conflicts
+     * @param path the path to remove
+     */
+    public void removePath(Path path) {
+        if (path.getLast() instanceof SingleAgentState) {
+            path.forEach(state -> removeSingleAgentStateCoordinate((SingleAgentState) state));
+            SingleAgentState finalState = (SingleAgentState) path.getLast();
+            removeDestination(finalState.coordinate(), finalState.getAgentGoal());
+        } else {
+            path.forEach(state -> ((MultiAgentState) state).getSingleAgentStates()
+                    .forEach(this::removeSingleAgentStateCoordinate));
+            MultiAgentState finalState = (MultiAgentState) path.getLast();
+            finalState.getSingleAgentStates()
+                    .forEach(singleAgentState -> removeDestination(singleAgentState.coordinate(), singleAgentState.getAgentGoal()));
+        }
+    }
+
+    /**
+     * Sets the path with an index, such as the index of an agent in a list
+     * of solutions, in place of the path last set with that index. Nothing
+     * changes if the path is already set with that index, so setting every
+     * path of a list only updates the table for the paths that changed.
+     * @param index the index of the path
+     * @param path the path, or null to only remove the path last set
+     */
+    public void setPath(int index, Path path) {
+        while (indexedPaths.size() <= index) indexedPaths.add(null);
+        Path previous = indexedPaths.get(index);
+        if (previous == path) return;
+        if (previous != null) removePath(previous);
+        if (path != null) addPath(path);
+        indexedPaths.set(index, path);
+    }
+
     /**
      * Returns the earliest conflict that a path introduces, or the
      * earliest conflict found while populating the CAT
@@ -180,28 +338,35 @@ public class ConflictAvoidanceTable {
      * @return the earliest conflict found
      */
     public Conflict simulatePath(Path path, int group) {
+        Conflict earliestConflict = getEarliestConflict();
         Conflict result = earliestConflict;
 
         for (int time = 0; time < path.size() && result == earliestConflict; time++) {
             MultiAgentState multiAgentState = (MultiAgentState) path.get(time);
-            int violation = violation(multiAgentState);
-            int goalOfConflictingAgent = agentGoalFromViolation(multiAgentState, violation);
-            // violation will not be the same as group since group's agents were not loaded from the beginning
-            if (violation != NO_CONFLICT) {
-                result = new Conflict(time, goalOfConflictingAgent, violation);
+            for (SingleAgentState singleAgentState : multiAgentState.getSingleAgentStates()) {
+                // violation will not be the same as group since group's agents were not loaded from the beginning
+                int violation = violation(singleAgentState);
+                if (violation != NO_CONFLICT) {
+                    result = new Conflict(time, singleAgentState.getAgentGoal(), violation);
+                    break;
+                }
             }
         }
-        return result;
-    }
 
-    private int agentGoalFromViolation(MultiAgentState multiAgentState, int violation) {
-        List<SingleAgentState> singleAgentStates = multiAgentState.getSingleAgentStates();
-        for (SingleAgentState singleAgentState : singleAgentStates) {
-            if (groupOccupantTable.get(singleAgentState.coordinate()).contains(violation)) {
-                return singleAgentState.getAgentGoal();
+        // paths in the table that pass the agents of the path after they reached their destinations
+        MultiAgentState finalState = (MultiAgentState) path.getLast();
+        for (int time = path.size(); time <= horizon && result == earliestConflict; time++) {
+            for (SingleAgentState singleAgentState : finalState.getSingleAgentStates()) {
+                int nodeIndex = singleAgentState.coordinate().getNode().getIndexInGraph();
+                int occupant = otherGroup(occupants.get(key(time, nodeIndex), VERTEX),
+                                          singleAgentState.getAgentGoal());
+                if (occupant != NO_CONFLICT) {
+                    result = new Conflict(time, singleAgentState.getAgentGoal(), occupant);
+                    break;
+                }
             }
         }
-        return -1;
+        return result;
     }
 
     private void addSingleAgentStateCoordinate(SingleAgentState singleAgentState, int group) {
@@ -210,99 +375,78 @@ public class ConflictAvoidanceTable {
         addCoordinate(singleAgentState.coordinate(), prev, group);
     }
 
-    protected void addCoordinate(Coordinate coordinate, Coordinate prev, int group) {
-        Conflict updatedConflict = earliestConflict;
-
-        // collision
-        if (!coordinateTable.containsKey(coordinate)) {
-            ArrayList<Coordinate> prevList = new ArrayList<>();
-            prevList.add(prev);
-            ArrayList<Integer> groupList = new ArrayList<>();
-            groupList.add(group);
-            coordinateTable.put(coordinate, prevList);
-            groupOccupantTable.put(coordinate, groupList);
-        } else {
-            coordinateTable.get(coordinate).add(prev);
-            groupOccupantTable.get(coordinate).add(group);
-            int otherGroup = groupOccupantTable.get(coordinate).get(0);
-            Conflict newConflict = new Conflict(coordinate.getTimeStep(),
-                                                group,
-                                                otherGroup,
-                                                coordinate.getNode(),
-                                                coordinate.getNode(),
-                                                ConflictType.COLLISION);
-            boolean earlier = earliestConflict == null
-                            || newConflict.getTimeStep() < earliestConflict.getTimeStep();
-            updatedConflict = earlier ? newConflict : earliestConflict;
-        }
+    private void removeSingleAgentStateCoordinate(SingleAgentState singleAgentState) {
+        Coordinate prev = singleAgentState.isRoot() ?
+                null : ((SingleAgentState) singleAgentState.predecessor()).coordinate();
+        removeCoordinate(singleAgentState.coordinate(), prev, singleAgentState.getAgentGoal());
+    }
 
-        int timeToCheck = earliestConflict == null ? Integer.MAX_VALUE : earliestConflict.getTimeStep();
-
-        // transposition
-        if (coordinateTable.containsKey(coordinate)
-                && updatedConflict == earliestConflict
-                && prev != null) {
-            coordinate.setTimeStep(coordinate.getTimeStep() - 1);
-            prev.setTimeStep(prev.getTimeStep() + 1);
-
-            if (coordinateTable.get(prev) != null) {
-                List<Coordinate> beforeCoords = coordinateTable.get(prev);
-                for (int i = 0; i < beforeCoords.size() && updatedConflict == earliestConflict; i++) {
-                    Coordinate before = beforeCoords.get(i);
-                    if (before.equals(coordinate)) {
-                        updatedConflict = new Conflict(coordinate.getTimeStep() + 1,
-                                                        i,
-                                                        group,
-                                                        coordinate.getNode(),
-                                                        prev.getNode(),
-                                                        ConflictType.TRANSPOSITION);
-                    }
-                }
+    protected void addCoordinate(Coordinate coordinate, Coordinate prev, int group) {
+        int timeStep = coordinate.getTimeStep();
+        Node node = coordinate.getNode();
+        int nodeIndex = node.getIndexInGraph();
+        long key = key(timeStep, nodeIndex);
+        horizon = Math.max(horizon, timeStep);
+
+        // collisions with the groups already at the coordinate
+        for (int otherGroup : occupants.get(key, VERTEX)) {
+            if (otherGroup != group) {
+                addConflict(new Conflict(timeStep, group, otherGroup, node, node, ConflictType.COLLISION));
             }
-
-            coordinate.setTimeStep(coordinate.getTimeStep() + 1);
-            prev.setTimeStep(prev.getTimeStep() - 1);
-
-            // destination collision
-
-            if (updatedConflict == earliestConflict
-                    && agentDestinations.containsKey(coordinate.getNode())) {
-                int[] destData = agentDestinations.get(coordinate.getNode());
-                if (destData[DEST_TIME_STEP] <= coordinate.getTimeStep()) {
-                    updatedConflict = new Conflict(coordinate.getTimeStep(),
-                                        destData[DEST_GROUP],
-                                        group,
-                                        coordinate.getNode(),
-                                        coordinate.getNode(),
-                                        ConflictType.DESTINATION);
+        }
+        occupants.add(key, VERTEX, group);
+
+        if (prev != null) {
+            Node previous = prev.getNode();
+            int previousIndex = previous.getIndexInGraph();
+            moves.add(key, previousIndex, group);
+            // transpositions with the groups that moved the other way
+            for (int otherGroup : moves.get(key(timeStep, previousIndex), nodeIndex)) {
+                if (otherGroup != group) {
+                    addConflict(new Conflict(timeStep, otherGroup, group, node, previous, ConflictType.TRANSPOSITION));
                 }
             }
         }
 
-        if (coordinate.getTimeStep() < timeToCheck) {
-            boolean shouldReplace = (earliestConflict == null && updatedConflict != earliestConflict)
-                                ||  (earliestConflict != null && updatedConflict.getTimeStep() < earliestConflict.getTimeStep());
-            if (shouldReplace) {
-                earliestConflict = updatedConflict;
-            }
+        // destination collision
+        int destinationGroup = destinationConflict(nodeIndex, timeStep, group);
+        if (destinationGroup != NO_CONFLICT) {
+            addConflict(new Conflict(timeStep, destinationGroup, group, node, node, ConflictType.DESTINATION));
         }
     }
 
-    protected void addDestination(Coordinate coordinate, int group) {
-        agentDestinations.put(coordinate.getNode(),
-                                new int[] {coordinate.getTimeStep(), group});
+    protected void removeCoordinate(Coordinate coordinate, Coordinate prev, int group) {
+        long key = key(coordinate.getTimeStep(), coordinate.getNode().getIndexInGraph());
+        occupants.remove(key, VERTEX, group);
+        if (prev != null) moves.remove(key, prev.getNode().getIndexInGraph(), group);
     }
 
-    public Map<Node, int[]> getAgentDestinations() {
-        return agentDestinations;
-    }
+    protected void addDestination(Coordinate coordinate, int group) {
+        Node node = coordinate.getNode();
+        int nodeIndex = node.getIndexInGraph();
+        if (destinations.get(nodeIndex, group).length == 0) {
+            destinations.add(nodeIndex, ARRIVALS, group);
+            destinationCount++;
+        }
+        destinations.add(nodeIndex, group, coordinate.getTimeStep());
 
-    public Map<Coordinate, List<Integer>> getGroupOccupantTable() {
-        return groupOccupantTable;
+        // groups that pass the destination after the group reached it
+        for (int timeStep = coordinate.getTimeStep() + 1; timeStep <= horizon; timeStep++) {
+            for (int otherGroup : occupants.get(key(timeStep, nodeIndex), VERTEX)) {
+                if (otherGroup != group) {
+                    addConflict(new Conflict(timeStep, group, otherGroup, node, node, ConflictType.DESTINATION));
+                }
+            }
+        }
     }
 
-    public Map<Coordinate, List<Coordinate>> getCoordinateTable() {
-        return coordinateTable;
+    protected void removeDestination(Coordinate coordinate, int group) {
+        int nodeIndex = coordinate.getNode().getIndexInGraph();
+        if (destinations.remove(nodeIndex, group, coordinate.getTimeStep())
+                && destinations.get(nodeIndex, group).length == 0) {
+            destinations.remove(nodeIndex, ARRIVALS, group);
+            destinationCount--;
+        }
     }
 
     //public void setRelevantGroups(List<Integer> relevantGroups) {
@@ -322,32 +466,7 @@ public class ConflictAvoidanceTable {
     //}
 
     public ConflictAvoidanceTable deepCopy() {
-        // deep copy of coordinate table
-        Map<Coordinate, List<Coordinate>> newCoordinateTable = new HashMap<>();
-        System.out.println("copying coordinate table");
-        for (Coordinate key : getCoordinateTable().keySet()) {
-            List<Coordinate> val = getCoordinateTable().get(key);
-            newCoordinateTable.put(key, new ArrayList<>(val));
-        }
-
-        //deep copy of group table
-        Map<Coordinate, List<Integer>> newGroupTable = new HashMap<>();
-        System.out.println("copying group mapping");
-        for (Coordinate key : getGroupOccupantTable().keySet()) {
-            List<Integer> val = getGroupOccupantTable().get(key);
-            newGroupTable.put(key, new ArrayList<>(val));
-        }
-
-        // deep copy of agent destinations
-        Map<Node, int[]> newAgentDestinations = new HashMap<>();
-        System.out.println("copying agent destinations");
-        for (Node key: getAgentDestinations().keySet()) {
-            int val[] = getAgentDestinations().get(key);
-            newAgentDestinations.put(key, new int[] {val[0], val[1]});
-        }
-
-        return new ConflictAvoidanceTable(newCoordinateTable, newGroupTable, newAgentDestinations, lastTimeStep, new HashMap<>());
-
+        return new ConflictAvoidanceTable(this);
     }
 
     public int getLastTimeStep() {
@@ -355,15 +474,69 @@ public class ConflictAvoidanceTable {
     }
 
     public void clear() {
-        coordinateTable = new HashMap<>();
-        groupOccupantTable = new HashMap<>();
-        agentDestinations = new HashMap<>();
-        earliestConflict = null;
+        occupants.clear();
+        moves.clear();
+        destinations.clear();
+        destinationCount = 0;
+        horizon = 0;
+        conflicts = null;
+        conflictCount = 0;
+        conflictLimit = MIN_CONFLICT_LIMIT;
+        indexedPaths.clear();
     }
 
     public String toString() {
-        return "Coordinate table: " + coordinateTable + "\n"
-                + "Groups table: " + groupOccupantTable + "\n"
-                + "Agent destinations: " + agentDestinations;
+        return "Occupied coordinates: " + occupants.keyCount() + ", occupants: " + occupants.size() + "\n"
+                + "Moves: " + moves.size() + "\n"
+                + "Agent destinations: " + destinationCount + "\n"
+                + "Conflicts found: " + conflictCount;
+    }
+
+    /**
+     * Node of a leftist heap of conflicts, earliest first. Nodes are never
+     * changed once created, so copies of a table share its heap.
+     */
+    private static final class ConflictHeap {
+
+        private final Conflict conflict;
+        private final ConflictHeap left;
+        private final ConflictHeap right;
+        private final int rank; // length of the rightmost path
+
+        ConflictHeap(Conflict conflict, ConflictHeap left, ConflictHeap right) {
+            this.conflict = conflict;
+            this.left = left;
+            this.right = right;
+            this.rank = rank(right) + 1;
+        }
+
+        static ConflictHeap merge(ConflictHeap heap1, ConflictHeap heap2) {
+            if (heap1 == null) return heap2;
+            if (heap2 == null) return heap1;
+            if (heap2.conflict.getTimeStep() < heap1.conflict.getTimeStep()) {
+                ConflictHeap earlier = heap2;
+                heap2 = heap1;
+                heap1 = earlier;
+            }
+            ConflictHeap merged = merge(heap1.right, heap2);
+            return rank(heap1.left) >= rank(merged) ?
+                    new ConflictHeap(heap1.conflict, heap1.left, merged) :
+                    new ConflictHeap(heap1.conflict, merged, heap1.left);
+        }
+
+        static void collect(ConflictHeap heap, List<Conflict> conflicts) {
+            Deque<ConflictHeap> pending = new ArrayDeque<>();
+            if (heap != null) pending.push(heap);
+            while (!pending.isEmpty()) {
+                ConflictHeap current = pending.pop();
+                conflicts.add(current.conflict);
+                if (current.left != null) pending.push(current.left);
+                if (current.right != null) pending.push(current.right);
+            }
+        }
+
+        private static int rank(ConflictHeap heap) {
+            return heap == null ? 0 : heap.rank;
+        }
     }
 }
@@ -1,5 +1,6 @@
 package solvers;
 
+import constants.SolveStatus;
 import solvers.astar.TDHeuristic;
 import utilities.ProblemInstance;
 
@@ -9,6 +10,11 @@ public abstract class ConstrainedSolver implements Solver {
     private MultiLevelCAT conflictAvoidanceTable;
     private ConstrainedSolver parentSolver;
     private int groupToSolve;
+    private SearchStatistics statistics = new SearchStatistics();
+    private SearchBudget budget = SearchBudget.UNLIMITED;
+    private CancellationToken cancellationToken;
+    private SearchLimits limits; // of the solve in progress, shared with low-level solvers
+    private SolveStatus status;
 
     private static final int NO_GROUP = -1;
 
@@ -40,15 +46,158 @@ public abstract class ConstrainedSolver implements Solver {
         this.conflictAvoidanceTable = conflictAvoidanceTable;
     }
 
+    /**
+     * Solves a problem instance within the budget and cancellation token
+     * set on this solver. A solver called by another solver shares the
+     * budget of the outermost solve instead.
+     * @param problemInstance the problem instance
+     * @return true if a solution was found, false otherwise; getStatus() tells why not
+     */
     public boolean solve(ProblemInstance problemInstance) {
+        boolean outermost = limits == null;
+        if (outermost) limits = new SearchLimits(budget, cancellationToken);
+        statistics = new SearchStatistics();
+        TDHeuristic heuristic = problemInstance.getTrueDistanceHeuristic();
+        if (heuristic != null) statistics.setHeuristicBuildNanos(heuristic.getBuildNanos());
+        long allocatedBefore = SearchStatistics.currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+
+        boolean solved = false;
         conflictAvoidanceTable.addLevel();
         reservation.addLevel();
-        boolean solved = subSolve(problemInstance);
-        conflictAvoidanceTable.removeLevel();
-        reservation.removeLevel();
+        try {
+            solved = subSolve(problemInstance);
+        } catch (OutOfMemoryError e) {
+            if (!outermost) throw e;
+            limits.stop(SolveStatus.OUT_OF_MEMORY);
+        } finally {
+            conflictAvoidanceTable.removeLevel();
+            reservation.removeLevel();
+            SolveStatus stopReason = limits.stopReason();
+            status = solved ? SolveStatus.SOLVED : stopReason != null ? stopReason : SolveStatus.NO_SOLUTION;
+            if (outermost) limits = null;
+
+            statistics.setRuntimeNanos(System.nanoTime() - start);
+            long allocatedAfter = SearchStatistics.currentThreadAllocatedBytes();
+            statistics.addAllocatedBytes(allocatedBefore == SearchStatistics.UNSUPPORTED ?
+                    SearchStatistics.UNSUPPORTED : allocatedAfter - allocatedBefore);
+        }
         return solved;
     }
 
+    /**
+     * Solves a problem instance within a budget, for this call only
+     * @param problemInstance the problem instance
+     * @param budget the budget of the solve
+     * @param token a token to cancel the solve from another thread, or null
+     * @return the status of the solve
+     */
+    public SolveStatus solve(ProblemInstance problemInstance, SearchBudget budget, CancellationToken token) {
+        SearchBudget previousBudget = this.budget;
+        CancellationToken previousToken = cancellationToken;
+        setBudget(budget);
+        setCancellationToken(token);
+        try {
+            solve(problemInstance);
+        } finally {
+            this.budget = previousBudget;
+            cancellationToken = previousToken;
+        }
+        return status;
+    }
+
+    /**
+     * Returns how the last solve ended
+     * @return the status of the last solve, or null before the first solve
+     */
+    public SolveStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Sets the budget of the solves of this solver
+     * @param budget the budget, such as SearchBudget.UNLIMITED
+     */
+    public void setBudget(SearchBudget budget) {
+        if (budget == null) throw new IllegalArgumentException("Budget must not be null, use SearchBudget.UNLIMITED");
+        this.budget = budget;
+    }
+
+    public SearchBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Sets the token that cancels the solves of this solver
+     * @param token the token, or null to never cancel
+     */
+    public void setCancellationToken(CancellationToken token) {
+        cancellationToken = token;
+    }
+
+    /**
+     * Counts an expansion against the budget of the solve in progress
+     * @return true if the search must stop
+     */
+    protected boolean countExpansion() {
+        return limits != null && limits.expand();
+    }
+
+    /**
+     * Counts a generated state against the budget of the solve in
+     * progress, for searches whose expansions can generate many states
+     * @return true if the search must stop
+     */
+    protected boolean countGeneration() {
+        return limits != null && limits.generate();
+    }
+
+    /**
+     * Checks the budget of the solve in progress without counting an
+     * expansion, for the loops of high-level solvers
+     * @return true if the solve must stop
+     */
+    protected boolean limitReached() {
+        return limits != null && limits.reached();
+    }
+
+    /**
+     * Makes a low-level solver share the budget of the solve in progress
+     * for the solves it makes until this solve ends
+     * @param lowLevel the low-level solver
+     */
+    protected void shareLimits(ConstrainedSolver lowLevel) {
+        lowLevel.limits = limits;
+    }
+
+    /**
+     * Solves a problem with a low-level solver within the budget of the
+     * solve in progress, adding the low-level statistics to these
+     * @param lowLevel the low-level solver
+     * @param problem the problem to solve
+     * @return true if the low-level solver found a solution
+     */
+    protected boolean solveLowLevel(ConstrainedSolver lowLevel, ProblemInstance problem) {
+        SearchLimits previous = lowLevel.limits;
+        lowLevel.limits = limits;
+        try {
+            return lowLevel.solve(problem);
+        } finally {
+            lowLevel.limits = previous;
+            statistics.countLowLevelCall();
+            statistics.add(lowLevel.statistics);
+        }
+    }
+
+    /**
+     * Returns the statistics of the last solve, which subclasses
+     * update while they solve
+     * @return the statistics of the last solve
+     */
+    public SearchStatistics getStatistics() {
+        return statistics;
+    }
+
     public abstract boolean subSolve(ProblemInstance problemInstance);
 
     public void setReservation(MultiLevelReservation reservation) {
@@ -35,6 +35,15 @@ public class MultiLevelCAT {
         catList.remove(catList.size() - 1);
     }
 
+    /**
+     * Replaces the table of the last level, such as with the table of the
+     * constraint tree node being replanned
+     * @param conflictAvoidanceTable the table of the level
+     */
+    public void replaceLevel(ConflictAvoidanceTable conflictAvoidanceTable) {
+        catList.set(catList.size() - 1, conflictAvoidanceTable);
+    }
+
     /**
      * Return the first violation found at the lowest level
      * @param state state to check
@@ -45,38 +54,57 @@ public class MultiLevelCAT {
     }
 
     public int totalViolations(SingleAgentState state) {
-        List<Integer> violations = new ArrayList<>();
-        for (ConflictAvoidanceTable conflictAvoidanceTable : catList) {
-            int violation = conflictAvoidanceTable.violation(state);
-            if (!violations.contains(violation) && violation != ConflictAvoidanceTable.NO_CONFLICT) {
-                violations.add(violation);
-            }
+        Node previous = state.isRoot() ?
+                null : ((SingleAgentState) state.predecessor()).coordinate().getNode();
+        return totalViolations(state.coordinate().getNode(), previous, state.timeStep(), state.getAgentGoal());
+    }
+
+    /**
+     * Return the number of distinct groups, over all levels, that an agent
+     * conflicts with by moving from previous to node at the given time step.
+     * Each level yields one group at most, which is counted unless an earlier
+     * level yields it too; so the count does not allocate or keep state, and
+     * threads may count on the same table. Unlike MultiLevelReservation, the
+     * levels are not merged into one table: CBS replaces the last level with
+     * the table of every constraint tree node it replans, which would mean
+     * rebuilding a merged table each time.
+     * @param node the node the agent arrives at
+     * @param previous the node the agent leaves, or null at the root
+     * @param timeStep the time step of arrival
+     * @param agentGoal the group of the agent
+     * @return the number of distinct conflicting groups
+     */
+    public int totalViolations(Node node, Node previous, int timeStep, int agentGoal) {
+        int count = 0;
+        for (int level = 0; level < catList.size(); level++) {
+            int violation = catList.get(level).violation(node, previous, timeStep, agentGoal);
+            if (violation == ConflictAvoidanceTable.NO_CONFLICT) continue;
+            int earlier = 0;
+            while (earlier < level
+                    && catList.get(earlier).violation(node, previous, timeStep, agentGoal) != violation) earlier++;
+            if (earlier == level) count++;
         }
-        return violations.size();
+        return count;
     }
 
     public void addPath(Path path) {
         catList.get(catList.size() - 1).addPath(path);
     }
 
-    public Conflict simulatePath(Path path, int group) {
-        return catList.get(catList.size() - 1).simulatePath(path, group);
-    }
-
-    public boolean isValid(State state) {
-        return catList.get(catList.size() - 1).isValid(state);
+    public void removePath(Path path) {
+        catList.get(catList.size() - 1).removePath(path);
     }
 
-    public Map<Node, int[]> getAgentDestinations() {
-        return catList.get(catList.size() - 1).getAgentDestinations();
+    public void setPath(int index, Path path) {
+        catList.get(catList.size() - 1).setPath(index, path);
     }
 
-    public Map<Coordinate, List<Integer>> getGroupOccupantTable() {
-        return catList.get(catList.size() - 1).getGroupOccupantTable();
+    public Conflict simulatePath(Path path, int group) {
+        return catList.get(catList.size() - 1).simulatePath(path, group);
     }
 
-    public Map<Coordinate, List<Coordinate>> getCoordinateTable() {
-        return catList.get(catList.size() - 1).getCoordinateTable();
+    public boolean isValid(State state) {
+        return catList.get(catList.size() - 1).isValid(state);
     }
 
     public Conflict getEarliestConflict() {
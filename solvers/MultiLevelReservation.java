@@ -8,25 +8,39 @@ import utilities.Node;
 import utilities.Path;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 
+/**
+ * Stack of reservation levels, of which only the last one is changed. A
+ * merged reservation holds the reservations of all levels, so that a move
+ * is checked against every level with a single lookup. The merged
+ * reservation is kept as it was before each level was added; since copies
+ * of a reservation share their unchanged parts, removing or clearing the
+ * last level restores the merged reservation in constant time.
+ */
 public class MultiLevelReservation {
 
     private List<Reservation> reservationList;
+    private Reservation merged; // the reservations of all levels
+    private List<Reservation> mergedBelow; // merged as it was before each level was added
 
     public MultiLevelReservation() {
         reservationList = new ArrayList<>();
+        merged = new Reservation();
+        mergedBelow = new ArrayList<>();
     }
 
     public void addLevel() {
         reservationList.add(new Reservation());
+        mergedBelow.add(merged);
+        merged = merged.deepCopy();
     }
 
     public void removeLevel() {
         reservationList.remove(reservationList.size() - 1);
+        merged = mergedBelow.remove(mergedBelow.size() - 1);
     }
 
     /**
@@ -38,35 +52,59 @@ public class MultiLevelReservation {
         return reservationList.get(reservationList.size() - 1).violation(state);
     }
 
+    /**
+     * Return the number of distinct groups that the state violates the
+     * reservations of in any level, with a single lookup in the merged
+     * reservation. Does not allocate or keep state, so threads may count
+     * on the same reservation.
+     * @param state state to check
+     * @return the number of distinct violated groups
+     */
     public int totalViolations(SingleAgentState state) {
-        List<Integer> violations = new ArrayList<>();
-        for (ConflictAvoidanceTable conflictAvoidanceTable : reservationList) {
-            int violation = conflictAvoidanceTable.violation(state);
-            if (!violations.contains(violation) && violation != ConflictAvoidanceTable.NO_CONFLICT) {
-                violations.add(violation);
-            }
-        }
-        return violations.size();
+        Node previous = state.isRoot() ?
+                null : ((SingleAgentState) state.predecessor()).coordinate().getNode();
+        return merged.violationCount(state.coordinate().getNode(), previous, state.timeStep(), state.getAgentGoal());
     }
 
     public void reserveCoordinate(Coordinate coordinate, Coordinate previous) {
         reservationList.get(reservationList.size() - 1).reserveCoordinate(coordinate, previous);
+        merged.reserveCoordinate(coordinate, previous);
     }
 
     public void reserveDestination(Coordinate coordinate) {
         reservationList.get(reservationList.size() - 1).reserveDestination(coordinate);
+        merged.reserveDestination(coordinate);
     }
 
     public void reservePath(Path path) {
-        reservationList.get(reservationList.size() - 1).addPath(path);
+        reservationList.get(reservationList.size() - 1).reservePath(path);
+        merged.reservePath(path);
+    }
+
+    /**
+     * Returns the safe intervals of a node for an agent over all levels
+     * @param node the node
+     * @param agentGoal the group of the agent
+     * @return the first and last time step of each interval, in order; the
+     *         last time step of an interval that never ends is Integer.MAX_VALUE.
+     *         The array may be shared and must not be modified
+     */
+    public int[] safeIntervals(Node node, int agentGoal) {
+        return merged.safeIntervals(node.getIndexInGraph(), agentGoal);
     }
 
+    /**
+     * Returns the last time step reserved in any level, until which an
+     * agent may not stay at its goal
+     * @return the last reserved time step
+     */
     public int getLastTimeStep() {
-        return reservationList.get(reservationList.size() - 1).getLastTimeStep();
+        return merged.getLastTimeStep();
     }
 
     public void addPath(Path path) {
         reservationList.get(reservationList.size() - 1).addPath(path);
+        merged.addPath(path);
     }
 
     public Conflict simulatePath(Path path, int group) {
@@ -74,24 +112,20 @@ public class MultiLevelReservation {
     }
 
     public boolean isValid(State state) {
-        boolean valid = true;
-        Iterator<Reservation> reservationIterator = reservationList.iterator();
-        while (valid && reservationIterator.hasNext()) {
-            valid &= reservationIterator.next().isValid(state);
-        }
-        return valid;
-    }
-
-    public Map<Node, int[]> getAgentDestinations() {
-        return reservationList.get(reservationList.size() - 1).getAgentDestinations();
+        return merged.isValid(state);
     }
 
-    public Map<Coordinate, List<Integer>> getGroupOccupantTable() {
-        return reservationList.get(reservationList.size() - 1).getGroupOccupantTable();
-    }
-
-    public Map<Coordinate, List<Coordinate>> getCoordinateTable() {
-        return reservationList.get(reservationList.size() - 1).getCoordinateTable();
+    /**
+     * Returns whether an agent may move from previous to node, arriving at the
+     * given time step, without violating a reservation in any level
+     * @param node the node the agent arrives at
+     * @param previous the node the agent leaves, or null at the root
+     * @param timeStep the time step of arrival
+     * @param agentGoal the group of the agent
+     * @return true if the move is valid, false otherwise
+     */
+    public boolean isValid(Node node, Node previous, int timeStep, int agentGoal) {
+        return merged.violation(node, previous, timeStep, agentGoal) == ConflictAvoidanceTable.NO_CONFLICT;
     }
 
     public Conflict getEarliestConflict() {
@@ -116,6 +150,7 @@ public class MultiLevelReservation {
 
     public void clear() {
         reservationList.get(reservationList.size() - 1).clear();
+        merged = mergedBelow.get(mergedBelow.size() - 1).deepCopy();
     }
 
 }
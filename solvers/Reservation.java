@@ -1,26 +1,28 @@
 package solvers;
 
 import utilities.Coordinate;
-import utilities.Node;
 import utilities.Path;
+import utilities.PersistentIntMultiMap;
 
-import java.util.List;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Reservation extends ConflictAvoidanceTable {
 
     private static final int NO_GROUP = 1;
+    private static final long OCCUPANTS = Long.MIN_VALUE; // second key of the groups that occupy a node
+    private static final int[] ALWAYS_SAFE = {0, Integer.MAX_VALUE};
+
+    // node and OCCUPANTS => groups that occupy the node at some time step; node and group => those time steps
+    private PersistentIntMultiMap occupiedTimeSteps;
 
     public Reservation() {
         super();
+        occupiedTimeSteps = new PersistentIntMultiMap();
     }
 
-    public Reservation(Map<Coordinate, List<Coordinate>> coordinateTable,
-                                  Map<Coordinate, List<Integer>> groupOccupantTable,
-                                  Map<Node, int[]> agentDestinations,
-                                  int lastTimeStep,
-                                  Map<Integer, Integer> agentGroups) {
-        super(coordinateTable, groupOccupantTable, agentDestinations, lastTimeStep, agentGroups);
+    private Reservation(Reservation other) {
+        super(other);
+        occupiedTimeSteps = other.occupiedTimeSteps.copy();
     }
 
     public void reserveCoordinate(Coordinate coordinate, Coordinate previous) {
@@ -37,21 +39,82 @@ public class Reservation extends ConflictAvoidanceTable {
         lastTimeStep = Math.max(lastTimeStep, path.getLast().timeStep());
     }
 
+    /**
+     * Returns the safe intervals of a node for an agent: the maximal ranges
+     * of time steps at which no other group occupies the node or stays at
+     * it as its destination
+     * @param nodeIndex the index of the node in the graph
+     * @param agentGoal the group of the agent
+     * @return the first and last time step of each interval, in order; the
+     *         last time step of an interval that never ends is Integer.MAX_VALUE.
+     *         The array may be shared and must not be modified
+     */
+    public int[] safeIntervals(int nodeIndex, int agentGoal) {
+        int[] groups = occupiedTimeSteps.get(nodeIndex, OCCUPANTS);
+        int numOccupied = 0;
+        for (int group : groups) {
+            if (group != agentGoal) numOccupied += occupiedTimeSteps.get(nodeIndex, group).length;
+        }
+        int blockedFrom = earliestArrival(nodeIndex, agentGoal);
+        if (numOccupied == 0 && blockedFrom == Integer.MAX_VALUE) return ALWAYS_SAFE;
+
+        int[] occupied = new int[numOccupied];
+        int filled = 0;
+        for (int group : groups) {
+            if (group == agentGoal) continue;
+            int[] timeSteps = occupiedTimeSteps.get(nodeIndex, group);
+            System.arraycopy(timeSteps, 0, occupied, filled, timeSteps.length);
+            filled += timeSteps.length;
+        }
+        Arrays.sort(occupied);
+
+        int[] intervals = new int[2 * (occupied.length + 1)];
+        int count = 0;
+        int start = 0;
+        for (int timeStep : occupied) {
+            if (timeStep >= blockedFrom) break;
+            if (timeStep > start) {
+                intervals[count++] = start;
+                intervals[count++] = timeStep - 1;
+            }
+            start = Math.max(start, timeStep + 1);
+        }
+        if (start < blockedFrom) {
+            intervals[count++] = start;
+            intervals[count++] = blockedFrom == Integer.MAX_VALUE ? Integer.MAX_VALUE : blockedFrom - 1;
+        }
+        return Arrays.copyOf(intervals, count);
+    }
+
+    @Override
+    protected void addCoordinate(Coordinate coordinate, Coordinate prev, int group) {
+        super.addCoordinate(coordinate, prev, group);
+        int nodeIndex = coordinate.getNode().getIndexInGraph();
+        if (occupiedTimeSteps.get(nodeIndex, group).length == 0) occupiedTimeSteps.add(nodeIndex, OCCUPANTS, group);
+        occupiedTimeSteps.add(nodeIndex, group, coordinate.getTimeStep());
+    }
+
+    @Override
+    protected void removeCoordinate(Coordinate coordinate, Coordinate prev, int group) {
+        super.removeCoordinate(coordinate, prev, group);
+        int nodeIndex = coordinate.getNode().getIndexInGraph();
+        if (occupiedTimeSteps.remove(nodeIndex, group, coordinate.getTimeStep())
+                && occupiedTimeSteps.get(nodeIndex, group).length == 0) {
+            occupiedTimeSteps.remove(nodeIndex, OCCUPANTS, group);
+        }
+    }
+
     public int getLastTimeStep() {
         return lastTimeStep;
     }
 
     public void clear() {
         super.clear();
+        occupiedTimeSteps.clear();
         lastTimeStep = 0;
     }
 
     public Reservation deepCopy() {
-        ConflictAvoidanceTable baseCAT = super.deepCopy();
-        return new Reservation( baseCAT.coordinateTable,
-                                baseCAT.groupOccupantTable,
-                                baseCAT.agentDestinations,
-                                baseCAT.lastTimeStep,
-                                baseCAT.agentGroups);
+        return new Reservation(this);
     }
 }
@@ -0,0 +1,77 @@
+package solvers;
+
+/**
+ * Limits on the resources a solve may use: wall time, expansions and heap.
+ * A budget is immutable; the with methods return modified copies.
+ */
+public class SearchBudget {
+
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+    public static final SearchBudget UNLIMITED = new SearchBudget(NO_LIMIT, NO_LIMIT, NO_LIMIT);
+
+    private final long timeLimitMillis;
+    private final long expansionLimit;
+    private final long heapLimitBytes;
+
+    private SearchBudget(long timeLimitMillis, long expansionLimit, long heapLimitBytes) {
+        this.timeLimitMillis = timeLimitMillis;
+        this.expansionLimit = expansionLimit;
+        this.heapLimitBytes = heapLimitBytes;
+    }
+
+    /**
+     * Returns a copy of this budget with a limit on wall time
+     * @param millis the longest a solve may run, in milliseconds
+     * @return the new budget
+     */
+    public SearchBudget withTimeLimit(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("Time limit must not be negative: " + millis);
+        return new SearchBudget(millis, expansionLimit, heapLimitBytes);
+    }
+
+    /**
+     * Returns a copy of this budget with a limit on the states expanded by
+     * every search of the solve, low-level searches included
+     * @param expansions the most states a solve may expand
+     * @return the new budget
+     */
+    public SearchBudget withExpansionLimit(long expansions) {
+        if (expansions < 0) throw new IllegalArgumentException("Expansion limit must not be negative: " + expansions);
+        return new SearchBudget(timeLimitMillis, expansions, heapLimitBytes);
+    }
+
+    /**
+     * Returns a copy of this budget with a limit on the used heap, as
+     * estimated by Runtime.totalMemory() - Runtime.freeMemory(). The limit
+     * applies to the whole JVM: solves running at the same time, like the
+     * runs of a benchmark with several threads, count each other's heap.
+     * @param bytes the most heap the JVM may use during the solve
+     * @return the new budget
+     */
+    public SearchBudget withHeapLimit(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Heap limit must not be negative: " + bytes);
+        return new SearchBudget(timeLimitMillis, expansionLimit, bytes);
+    }
+
+    public long getTimeLimitMillis() {
+        return timeLimitMillis;
+    }
+
+    public long getExpansionLimit() {
+        return expansionLimit;
+    }
+
+    public long getHeapLimitBytes() {
+        return heapLimitBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchBudget(ms=" + limitString(timeLimitMillis) + ", expansions=" + limitString(expansionLimit)
+                + ", heap=" + limitString(heapLimitBytes) + ")";
+    }
+
+    private static String limitString(long limit) {
+        return limit == NO_LIMIT ? "none" : Long.toString(limit);
+    }
+}
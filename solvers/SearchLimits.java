@@ -0,0 +1,105 @@
+package solvers;
+
+import constants.SolveStatus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The budget and cancellation token of a solve in progress, shared by the
+ * solver that was called and its low-level solvers. Searches call
+ * expand() once per expansion, and generate() once per generated state
+ * when an expansion can generate many, like the joint moves of
+ * Multiagent A*. expand() reads the token and the clock every time and
+ * the heap every HEAP_CHECK_INTERVAL calls; generate() reads them every
+ * GENERATION_CHECK_INTERVAL calls, so checks stay cheap. Once a limit is
+ * reached it stays reached.
+ * <p>
+ * The heap is measured for the whole JVM, so with several solves running
+ * at once a heap limit stops whichever solve checks it next, not the one
+ * using the most memory.
+ */
+class SearchLimits {
+
+    private static final int HEAP_CHECK_INTERVAL = 1024;
+    private static final int GENERATION_CHECK_INTERVAL = 256;
+
+    private final SearchBudget budget;
+    private final CancellationToken token;
+    private final long deadlineNanos;
+    private final AtomicLong expansions; // searches may run on several threads
+    private final AtomicLong generations;
+    private volatile SolveStatus stopReason;
+
+    SearchLimits(SearchBudget budget, CancellationToken token) {
+        this.budget = budget;
+        this.token = token;
+        long timeLimit = budget.getTimeLimitMillis();
+        deadlineNanos = timeLimit == SearchBudget.NO_LIMIT ? Long.MAX_VALUE : System.nanoTime() + timeLimit * 1000000;
+        expansions = new AtomicLong();
+        generations = new AtomicLong();
+    }
+
+    /**
+     * Counts an expansion and checks the limits
+     * @return true if the solve must stop
+     */
+    boolean expand() {
+        long count = expansions.incrementAndGet();
+        if (stopReason != null) return true;
+        if (token != null && token.isCancelled()) return stop(SolveStatus.CANCELLED);
+        if (count > budget.getExpansionLimit()) return stop(SolveStatus.NODE_LIMIT);
+        if (pastDeadline()) return stop(SolveStatus.TIMEOUT);
+        if (count % HEAP_CHECK_INTERVAL == 1 && heapExceeded()) return stop(SolveStatus.OUT_OF_MEMORY);
+        return false;
+    }
+
+    /**
+     * Counts a generated state and checks the limits other than the
+     * expansion limit every GENERATION_CHECK_INTERVAL calls
+     * @return true if the solve must stop
+     */
+    boolean generate() {
+        if (stopReason != null) return true;
+        if (generations.incrementAndGet() % GENERATION_CHECK_INTERVAL != 0) return false;
+        if (token != null && token.isCancelled()) return stop(SolveStatus.CANCELLED);
+        if (pastDeadline()) return stop(SolveStatus.TIMEOUT);
+        if (heapExceeded()) return stop(SolveStatus.OUT_OF_MEMORY);
+        return false;
+    }
+
+    /**
+     * Checks the limits without counting an expansion, for loops of
+     * high-level solvers
+     * @return true if the solve must stop
+     */
+    boolean reached() {
+        if (stopReason != null) return true;
+        if (token != null && token.isCancelled()) return stop(SolveStatus.CANCELLED);
+        if (pastDeadline()) return stop(SolveStatus.TIMEOUT);
+        return false;
+    }
+
+    private boolean pastDeadline() {
+        return deadlineNanos != Long.MAX_VALUE && System.nanoTime() - deadlineNanos > 0;
+    }
+
+    // used heap of the whole JVM, not only of this solve
+    private boolean heapExceeded() {
+        if (budget.getHeapLimitBytes() == SearchBudget.NO_LIMIT) return false;
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() > budget.getHeapLimitBytes();
+    }
+
+    boolean stop(SolveStatus reason) {
+        if (stopReason == null) stopReason = reason;
+        return true;
+    }
+
+    /**
+     * Returns why the solve had to stop
+     * @return the limit that was reached, or null if none was
+     */
+    SolveStatus stopReason() {
+        return stopReason;
+    }
+}
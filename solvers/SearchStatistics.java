@@ -0,0 +1,178 @@
+package solvers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counters describing the work a solver did in its last solve. Counters are
+ * plain fields updated by the solving thread, so they are cheap enough to
+ * stay on. High-level solvers add the counters of their low-level searches
+ * to their own with add(), while run time, allocated bytes and heuristic
+ * build time are measured once, by the solver that was called.
+ */
+public class SearchStatistics {
+
+    public static final long UNSUPPORTED = -1;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private long generated;
+    private long expanded;
+    private long reopened;
+    private long closedListHits;
+    private long peakOpenSize;
+    private long peakClosedSize;
+    private long lowLevelCalls;
+    private long constraintTreeNodes;
+    private long merges;
+    private long heuristicBuildNanos;
+    private long runtimeNanos;
+    private long allocatedBytes;
+
+    public void countGenerated() {
+        generated++;
+    }
+
+    public void countExpanded() {
+        expanded++;
+    }
+
+    public void countReopened() {
+        reopened++;
+    }
+
+    public void countClosedListHit() {
+        closedListHits++;
+    }
+
+    public void countLowLevelCall() {
+        lowLevelCalls++;
+    }
+
+    public void countConstraintTreeNode() {
+        constraintTreeNodes++;
+    }
+
+    public void countMerge() {
+        merges++;
+    }
+
+    /**
+     * Records the current sizes of the open and closed lists
+     * @param openSize the number of states in the open list
+     * @param closedSize the number of states in the closed list
+     */
+    public void updatePeaks(int openSize, int closedSize) {
+        if (openSize > peakOpenSize) peakOpenSize = openSize;
+        if (closedSize > peakClosedSize) peakClosedSize = closedSize;
+    }
+
+    /**
+     * Adds the search counters of another solve, such as a low-level search,
+     * to these. Peak sizes are combined by taking the larger one.
+     * @param other the statistics of the other solve
+     */
+    public void add(SearchStatistics other) {
+        generated += other.generated;
+        expanded += other.expanded;
+        reopened += other.reopened;
+        closedListHits += other.closedListHits;
+        peakOpenSize = Math.max(peakOpenSize, other.peakOpenSize);
+        peakClosedSize = Math.max(peakClosedSize, other.peakClosedSize);
+        lowLevelCalls += other.lowLevelCalls;
+        constraintTreeNodes += other.constraintTreeNodes;
+        merges += other.merges;
+    }
+
+    /**
+     * Adds the bytes allocated by a thread other than the solving thread,
+     * such as a worker of a parallel search
+     * @param bytes the bytes allocated, or UNSUPPORTED
+     */
+    public void addAllocatedBytes(long bytes) {
+        if (bytes == UNSUPPORTED || allocatedBytes == UNSUPPORTED) allocatedBytes = UNSUPPORTED;
+        else allocatedBytes += bytes;
+    }
+
+    void setRuntimeNanos(long runtimeNanos) {
+        this.runtimeNanos = runtimeNanos;
+    }
+
+    void setHeuristicBuildNanos(long heuristicBuildNanos) {
+        this.heuristicBuildNanos = heuristicBuildNanos;
+    }
+
+    /**
+     * Returns the bytes the current thread has allocated so far
+     * @return the allocated bytes, or UNSUPPORTED if the JVM does not measure them
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return UNSUPPORTED;
+        com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotSpotThreads.isThreadAllocatedMemorySupported() || !hotSpotThreads.isThreadAllocatedMemoryEnabled())
+            return UNSUPPORTED;
+        return hotSpotThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public long getGenerated() {
+        return generated;
+    }
+
+    public long getExpanded() {
+        return expanded;
+    }
+
+    public long getReopened() {
+        return reopened;
+    }
+
+    public long getClosedListHits() {
+        return closedListHits;
+    }
+
+    public long getPeakOpenSize() {
+        return peakOpenSize;
+    }
+
+    public long getPeakClosedSize() {
+        return peakClosedSize;
+    }
+
+    public long getLowLevelCalls() {
+        return lowLevelCalls;
+    }
+
+    public long getConstraintTreeNodes() {
+        return constraintTreeNodes;
+    }
+
+    public long getMerges() {
+        return merges;
+    }
+
+    public long getHeuristicBuildNanos() {
+        return heuristicBuildNanos;
+    }
+
+    public long getRuntimeNanos() {
+        return runtimeNanos;
+    }
+
+    /**
+     * Returns the bytes allocated during the solve by the solving thread
+     * and any worker threads
+     * @return the allocated bytes, or UNSUPPORTED if the JVM does not measure them
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "generated=" + generated + " expanded=" + expanded + " reopened=" + reopened
+                + " closedListHits=" + closedListHits + " peakOpen=" + peakOpenSize + " peakClosed=" + peakClosedSize
+                + " lowLevelCalls=" + lowLevelCalls + " ctNodes=" + constraintTreeNodes + " merges=" + merges
+                + " heuristicMs=" + heuristicBuildNanos / 1000000 + " ms=" + runtimeNanos / 1000000
+                + " allocatedBytes=" + allocatedBytes;
+    }
+}
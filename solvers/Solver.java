@@ -1,5 +1,6 @@
 package solvers;
 
+import constants.SolveStatus;
 import utilities.Path;
 import utilities.ProblemInstance;
 
@@ -21,4 +22,16 @@ public interface Solver {
      */
     Path getPath();
 
+    /**
+     * Returns the statistics of the last solve
+     * @return the statistics of the last solve
+     */
+    SearchStatistics getStatistics();
+
+    /**
+     * Returns how the last solve ended
+     * @return the status of the last solve
+     */
+    SolveStatus getStatus();
+
 }
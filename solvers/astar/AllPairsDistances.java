@@ -0,0 +1,137 @@
+package solvers.astar;
+
+import utilities.DialSearch;
+import utilities.Graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Matrix of the true distance between every pair of nodes in a graph,
+ * for graphs small enough that the whole matrix fits in memory. Distances
+ * are multiples of 1 / RESOLUTION and are stored as unsigned 16-bit fixed
+ * point values, so a graph with n nodes takes 2n^2 bytes. A matrix is
+ * computed once per graph and shared.
+ */
+public class AllPairsDistances {
+
+    private static final int RESOLUTION = 4;
+    private static final int MAX_SCALED = Character.MAX_VALUE;
+    private static final int MAX_NODES = 46340; // n * n must fit in an int
+
+    // the matrix of each graph, computed by the first thread that asks for it
+    private static final Map<Graph, FutureTask<AllPairsDistances>> matrices = new WeakHashMap<>();
+
+    private final int numNodes;
+    private final char[] distances; // row per goal, column per node
+
+    private AllPairsDistances(int numNodes, char[] distances) {
+        this.numNodes = numNodes;
+        this.distances = distances;
+    }
+
+    /**
+     * Returns the matrix of a graph, computing it on the pool the first time.
+     * The matrix is computed outside the lock of the registry, so matrices
+     * of other graphs can be looked up meanwhile; threads asking for the
+     * same graph wait for the first one to finish
+     * @param graph the graph
+     * @param pool the pool used to compute the rows of the matrix
+     * @return the matrix, or null if the graph is too large or its distances
+     *         do not fit in 16 bits
+     */
+    public static AllPairsDistances forGraph(Graph graph, ForkJoinPool pool) {
+        if (graph.getSize() > MAX_NODES) return null;
+        FutureTask<AllPairsDistances> matrix;
+        boolean computeHere = false;
+        synchronized (matrices) {
+            matrix = matrices.get(graph);
+            if (matrix == null) {
+                // a finished task drops its callable, so the registry does not keep the graph alive
+                matrix = new FutureTask<>(() -> compute(graph, pool));
+                matrices.put(graph, matrix);
+                computeHere = true;
+            }
+        }
+        if (computeHere) matrix.run();
+        try {
+            return matrix.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for distance matrix", e);
+        } catch (ExecutionException e) {
+            // let a later call try again
+            synchronized (matrices) {
+                if (matrices.get(graph) == matrix) matrices.remove(graph);
+            }
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Failed to build distance matrix", e.getCause());
+        }
+    }
+
+    private static AllPairsDistances compute(Graph graph, ForkJoinPool pool) {
+        int numNodes = graph.getSize();
+        char[] distances = new char[numNodes * numNodes];
+        List<Callable<Boolean>> rows = new ArrayList<>();
+        for (int goal = 0; goal < numNodes; goal++) {
+            int row = goal;
+            rows.add(() -> fillRow(graph, row, distances));
+        }
+        try {
+            for (Future<Boolean> fits : pool.invokeAll(rows)) {
+                if (!fits.get()) return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building distance matrix", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build distance matrix", e.getCause());
+        }
+        return new AllPairsDistances(numNodes, distances);
+    }
+
+    // returns false if a distance is too large to store
+    private static boolean fillRow(Graph graph, int goal, char[] distances) {
+        double[] row = DialSearch.distancesFrom(graph, goal);
+        int offset = goal * row.length;
+        for (int node = 0; node < row.length; node++) {
+            long scaled = Math.round(row[node] * RESOLUTION);
+            if (scaled > MAX_SCALED) return false;
+            distances[offset + node] = (char) scaled;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the cost of the cheapest path from a node to a goal
+     * @param nodeIndex index in the graph of the node
+     * @param goalIndex index in the graph of the goal
+     * @return the true distance, or 0 if the goal cannot be reached
+     */
+    public double distance(int nodeIndex, int goalIndex) {
+        return (double) distances[goalIndex * numNodes + nodeIndex] / RESOLUTION;
+    }
+
+    /**
+     * Copies the distances from every node to a goal
+     * @param goalIndex index in the graph of the goal
+     * @return the distance from every node to the goal
+     */
+    public double[] row(int goalIndex) {
+        double[] row = new double[numNodes];
+        int offset = goalIndex * numNodes;
+        for (int node = 0; node < numNodes; node++) row[node] = (double) distances[offset + node] / RESOLUTION;
+        return row;
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+}
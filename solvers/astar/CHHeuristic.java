@@ -0,0 +1,99 @@
+package solvers.astar;
+
+import utilities.ContractionHierarchy;
+import utilities.Graph;
+import utilities.PackedKeyTable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * True-distance heuristic that answers queries with the graph's contraction
+ * hierarchy instead of building a table per goal. The upward search from
+ * each goal is run once and kept, so a query only needs the upward search
+ * from the queried node, and every answer is memoized per goal. Distances
+ * are exact, and 0 for nodes that cannot reach the goal, like TDHeuristic.
+ * Queries for different goals do not wait for each other. The memos are
+ * dropped whenever they outgrow the byte budget of GoalDistanceCache.
+ */
+public class CHHeuristic extends TDHeuristic {
+
+    // a memoized distance: key and value in a table kept at most half full
+    private static final int BYTES_PER_DISTANCE = 2 * (Long.BYTES + Double.BYTES + 1);
+
+    private final ContractionHierarchy hierarchy;
+    private final Map<Integer, GoalMemo> memos;
+    private final long maxMemoBytes;
+    private final AtomicLong memoBytes;
+
+    /**
+     * Constructor that creates a heuristic for any goal in the graph,
+     * contracting the graph if it has not been contracted yet
+     * @param graph the graph
+     */
+    public CHHeuristic(Graph graph) {
+        super(graph);
+        hierarchy = graph.getContractionHierarchy();
+        memos = new ConcurrentHashMap<>();
+        maxMemoBytes = GoalDistanceCache.getMaxBytes();
+        memoBytes = new AtomicLong();
+    }
+
+    @Override
+    public double trueDistance(int nodeIndex, int goalIndex) {
+        GoalMemo memo = memos.get(goalIndex);
+        if (memo == null) {
+            GoalMemo created = new GoalMemo(hierarchy.upwardSearch(goalIndex));
+            memo = memos.putIfAbsent(goalIndex, created);
+            if (memo == null) {
+                memo = created;
+                countMemoBytes((long) created.goalSearch.size() * BYTES_PER_DISTANCE);
+            }
+        }
+        synchronized (memo) {
+            int slot = memo.distances.indexOf(nodeIndex);
+            if (slot != PackedKeyTable.NOT_FOUND) return memo.distances.valueAt(slot);
+        }
+
+        double distance = hierarchy.upwardSearch(nodeIndex).meet(memo.goalSearch);
+        if (distance == Double.POSITIVE_INFINITY) distance = 0;
+        boolean added;
+        synchronized (memo) {
+            int sizeBefore = memo.distances.size();
+            memo.distances.put(nodeIndex, distance);
+            added = memo.distances.size() > sizeBefore;
+        }
+        if (added) countMemoBytes(BYTES_PER_DISTANCE);
+        return distance;
+    }
+
+    private void countMemoBytes(long bytes) {
+        if (memoBytes.addAndGet(bytes) > maxMemoBytes) {
+            // start over rather than track which goals were used last
+            memos.clear();
+            memoBytes.set(0);
+        }
+    }
+
+    public String toString() {
+        return "Contraction hierarchy heuristic";
+    }
+
+    /**
+     * Upward search space of a goal and the distances found to it so far.
+     * The search space is never modified; the distances are guarded by the
+     * memo's lock
+     */
+    private static class GoalMemo {
+
+        private final PackedKeyTable goalSearch;
+        private final PackedKeyTable distances;
+
+        GoalMemo(ContractionHierarchy.SearchSpace space) {
+            goalSearch = new PackedKeyTable(1, space.size());
+            for (int i = 0; i < space.size(); i++) goalSearch.put(space.getNode(i), space.getDistance(i));
+            distances = new PackedKeyTable(1);
+        }
+    }
+}
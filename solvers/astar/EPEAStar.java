@@ -0,0 +1,73 @@
+package solvers.astar;
+
+import constants.CostFunction;
+import constants.Keys;
+import solvers.ConstrainedSolver;
+import solvers.states.EPEAState;
+import utilities.ProblemInstance;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that implements Enhanced Partial Expansion A* (Goldenberg et al.)
+ * for the sum of costs. An expansion only generates the children whose
+ * f-value equals the f-value the state was removed from the open list
+ * with, using an operator table per goal to find them without trying every
+ * joint move. The state then goes back in the open list with the next
+ * larger f-value of its children, so children that are never needed are
+ * never generated.
+ */
+public class EPEAStar extends MultiAgentAStar {
+
+    /**
+     * Constructor that creates an EPEA* solver
+     */
+    public EPEAStar() {
+        this(null, -1, new HashMap<>());
+    }
+
+    /**
+     * Constructor that creates an EPEA* solver with the specified parameters
+     * @param params a map containing parameters to alter solver behavior
+     */
+    public EPEAStar(Map<Keys, Object> params) {
+        this(null, -1, params);
+    }
+
+    public EPEAStar(ConstrainedSolver highLevel, int groupToSolve, Map<Keys, Object> params) {
+        super(highLevel, groupToSolve, CostFunction.SUM_OF_COSTS, params);
+    }
+
+    @Override
+    public State createRoot(ProblemInstance problemInstance) {
+        return new EPEAState(problemInstance);
+    }
+
+    @Override
+    protected List<State> expand(State state, ProblemInstance problem) {
+        List<State> children = state.expand(problem);
+        EPEAState partial = (EPEAState) state;
+        if (partial.hasMoreChildren()) {
+            partial.requestNextChildren();
+            openList.add(partial);
+        }
+        return children;
+    }
+
+    /**
+     * States go back in the open list they came from, so EPEA* always
+     * searches with one thread
+     * @return false
+     */
+    @Override
+    protected boolean supportsParallelSearch() {
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "EPEA*";
+    }
+}
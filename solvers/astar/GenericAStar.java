@@ -6,6 +6,7 @@ import constants.Keys;
 import solvers.ConstrainedSolver;
 import solvers.MultiLevelReservation;
 import solvers.Reservation;
+import solvers.SearchStatistics;
 import solvers.states.MultiAgentState;
 import solvers.states.SingleAgentState;
 import utilities.*;
@@ -16,10 +17,12 @@ import utilities.*;
 public abstract class GenericAStar extends ConstrainedSolver {
 
     private Map<Keys, Object> params;
-    protected PriorityQueue<State> openList;
+    protected IOpenList openList;
     protected IClosedList closedList;
     protected State goal;
     private ProblemInstance problemInstance;
+    private PairwiseHeuristic pairwiseHeuristic;
+    private long[] workerExpansions = new long[0];
 
     public GenericAStar() {
         this(new HashMap<>());
@@ -37,7 +40,7 @@ public abstract class GenericAStar extends ConstrainedSolver {
     public GenericAStar(ConstrainedSolver parentSolver, int groupToSolve, Map<Keys, Object> params) {
         super(parentSolver, groupToSolve);
         this.params = params;
-        openList = new PriorityQueue<>();
+        openList = new StateOpenList();
         closedList = new StateClosedList();
     }
 
@@ -54,29 +57,107 @@ public abstract class GenericAStar extends ConstrainedSolver {
      */
     public boolean subSolve(ProblemInstance problem) {
         init(problem);
+        SearchStatistics statistics = getStatistics();
         State current = createRoot(problem);
         setStateHeuristic(current);
+        statistics.countGenerated();
+        int threads = params.get(Keys.THREADS) == null ? 1 : (Integer) params.get(Keys.THREADS);
+        if (threads > 1 && problem.getAgents().size() > 1 && supportsParallelSearch()) {
+            HashDistributedSearch search = new HashDistributedSearch(this, problem, threads,
+                    Boolean.TRUE.equals(params.get(Keys.PACKED_CLOSED_LIST)));
+            goal = search.search(current);
+            workerExpansions = search.getExpansions();
+            search.addStatisticsTo(statistics);
+            return goal != null;
+        }
+
         openList.add(current);
         closedList.add(current);
         while (!openList.isEmpty()) {
+            statistics.updatePeaks(openList.size(), closedList.size());
             current = openList.remove();
             if (isGoal(problem, current) && current.timeStep() >= getReservation().getLastTimeStep()) {
                 goal = current;
+                workerExpansions = new long[] {statistics.getExpanded()};
                 return true;
             }
-            List<State> neighbors = current.expand(problem);
-            neighbors.forEach(this::handleNeighbor);
+            if (countExpansion()) return false;
+            statistics.countExpanded();
+            Iterator<? extends State> neighbors = successors(current, problem);
+            while (neighbors.hasNext()) {
+                if (countGeneration()) return false;
+                handleNeighbor(neighbors.next());
+            }
         }
+        workerExpansions = new long[] {statistics.getExpanded()};
         return false;
     }
 
+    // lets the workers of a parallel search count expansions against the budget
+    boolean countParallelExpansion() {
+        return countExpansion();
+    }
+
+    boolean countParallelGeneration() {
+        return countGeneration();
+    }
+
+    /**
+     * Returns whether the solver can search with several threads when
+     * Keys.THREADS asks for it
+     * @return true if states can be expanded by any thread
+     */
+    protected boolean supportsParallelSearch() {
+        return true;
+    }
+
+    /**
+     * Returns the number of states each thread expanded in the last solve
+     * @return the expansions of each thread, a single entry for a
+     *         single-threaded search
+     */
+    public long[] getWorkerExpansions() {
+        return workerExpansions.clone();
+    }
+
+    /**
+     * Generates the successors of a state removed from the open list.
+     * Solvers that expand states partially override this to put the state
+     * back in the open list.
+     * @param state the state to expand
+     * @param problem the problem instance
+     * @return the successors of the state
+     */
+    protected List<State> expand(State state, ProblemInstance problem) {
+        return state.expand(problem);
+    }
+
+    /**
+     * Returns the successors of a state removed from the open list one at
+     * a time, so the budget is checked while a large expansion is still
+     * generating them. By default these are the states expand() returns.
+     * @param state the state to expand
+     * @param problem the problem instance
+     * @return an iterator over the successors of the state
+     */
+    protected Iterator<? extends State> successors(State state, ProblemInstance problem) {
+        return expand(state, problem).iterator();
+    }
+
     protected void handleNeighbor(State state) {
+        SearchStatistics statistics = getStatistics();
+        statistics.countGenerated();
         if (getReservation().isValid(state)) {
+            int closedBefore = closedList.size();
             if (!closedList.contains(state)) {
                 setStateHeuristic(state);
                 state.updateCATViolations(getConflictAvoidanceTable());
                 openList.add(state);
                 closedList.add(state);
+                // a cheaper path replaced a closed entry instead of adding one
+                if (state.belongsInClosedList() && closedList.size() == closedBefore) statistics.countReopened();
+            } else {
+                statistics.countClosedListHit();
             }
         }
     }
@@ -102,8 +183,18 @@ public abstract class GenericAStar extends ConstrainedSolver {
         params.put(param, value);
     }
 
+    /**
+     * Replace the open list used by this solver, e.g. with a BucketOpenList
+     * @param openList the (empty) open list to use from the next solve on
+     */
+    public void setOpenList(IOpenList openList) {
+        this.openList = openList;
+    }
+
     protected void setStateHeuristic(State s) {
         s.setHeuristic(problemInstance.getTrueDistanceHeuristic());
+        if (pairwiseHeuristic != null && s instanceof MultiAgentState)
+            ((MultiAgentState) s).addPairwiseHeuristic(pairwiseHeuristic);
     }
 
     
@@ -114,7 +205,10 @@ public abstract class GenericAStar extends ConstrainedSolver {
     	goal = null;
         this.problemInstance = problem;
     	openList.clear();
-        closedList = new StateClosedList();
+        closedList = Boolean.TRUE.equals(params.get(Keys.PACKED_CLOSED_LIST)) ?
+                new PackedStateClosedList(problem) : new StateClosedList();
+        pairwiseHeuristic = Boolean.TRUE.equals(params.get(Keys.PAIRWISE_HEURISTIC)) && problem.getAgents().size() > 1 ?
+                new PairwiseHeuristic(problem) : null;
         if (params.get(Keys.RESERVATIONS) != null)
             setReservation((MultiLevelReservation) params.get(Keys.RESERVATIONS));
     }
@@ -0,0 +1,165 @@
+package solvers.astar;
+
+import utilities.Graph;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Registry of goal-distance tables shared by every TDHeuristic.
+ * Tables are kept by the graph they were computed on, weakly like the
+ * tables of LandmarkHeuristic and AllPairsDistances, and by goal node, so
+ * problem instances that share a graph and goals (such as the sub-problems
+ * built by CBS and CA*) reuse them instead of searching the graph again,
+ * and a graph that is no longer used is collected with its tables. The
+ * least recently used tables are evicted once the cache holds more than
+ * the configured number of bytes.
+ * Tables handed out by the cache are shared and must not be modified.
+ */
+public class GoalDistanceCache {
+
+    private static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+    private static final Map<Graph, GraphTables> graphTables = new WeakHashMap<>();
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long uses; // ticks of the lookups and stores, to find the least recently used table
+    private static long hits;
+    private static long misses;
+
+    private GoalDistanceCache() {}
+
+    /**
+     * Returns the cached distance table for a goal on a graph
+     * @param graph the graph the table was computed on
+     * @param goal index in the graph of the goal node
+     * @return the table, or null if it is not cached
+     */
+    public static synchronized double[] get(Graph graph, int goal) {
+        GraphTables cached = graphTables.get(graph);
+        CachedTable table = cached == null ? null : cached.tables.get(goal);
+        if (table == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        table.lastUse = ++uses;
+        return table.distances;
+    }
+
+    /**
+     * Stores the distance table for a goal on a graph, evicting the
+     * least recently used tables if the cache grows too large
+     * @param graph the graph the table was computed on
+     * @param goal index in the graph of the goal node
+     * @param table the distance from every node to the goal
+     */
+    public static synchronized void put(Graph graph, int goal, double[] table) {
+        GraphTables cached = graphTables.computeIfAbsent(graph, key -> new GraphTables());
+        CachedTable previous = cached.tables.put(goal, new CachedTable(table, ++uses));
+        if (previous != null) cached.bytes -= sizeOf(previous.distances);
+        cached.bytes += sizeOf(table);
+        evict();
+    }
+
+    /**
+     * Sets the number of bytes of tables the cache may hold,
+     * evicting tables if it currently holds more
+     * @param max the maximum number of bytes, 0 to disable caching
+     */
+    public static synchronized void setMaxBytes(long max) {
+        if (max < 0) throw new IllegalArgumentException("Cache size must not be negative: " + max);
+        maxBytes = max;
+        evict();
+    }
+
+    public static synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of bytes held by cached tables of graphs that
+     * are still in use
+     * @return the number of bytes held by cached tables
+     */
+    public static synchronized long getBytes() {
+        long bytes = 0;
+        for (GraphTables cached : graphTables.values()) bytes += cached.bytes;
+        return bytes;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached table
+     * @return the number of cache hits
+     */
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that did not find a cached table
+     * @return the number of cache misses
+     */
+    public static synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Removes every table and resets the hit and miss counters
+     */
+    public static synchronized void clear() {
+        graphTables.clear();
+        hits = 0;
+        misses = 0;
+    }
+
+    // the total is summed over the live graphs, since the tables of a collected graph leave with it
+    private static void evict() {
+        long bytes = getBytes();
+        while (bytes > maxBytes) {
+            GraphTables oldest = null;
+            for (GraphTables cached : graphTables.values()) {
+                if (cached.tables.isEmpty()) continue;
+                if (oldest == null || cached.leastRecentlyUsed().lastUse < oldest.leastRecentlyUsed().lastUse)
+                    oldest = cached;
+            }
+            if (oldest == null) return;
+            Map.Entry<Integer, CachedTable> evicted = oldest.tables.entrySet().iterator().next();
+            long size = sizeOf(evicted.getValue().distances);
+            oldest.tables.remove(evicted.getKey());
+            oldest.bytes -= size;
+            bytes -= size;
+        }
+    }
+
+    private static long sizeOf(double[] table) {
+        return (long) table.length * Double.BYTES;
+    }
+
+    /**
+     * The tables of one graph by goal node, least recently used first
+     */
+    private static class GraphTables {
+
+        private final LinkedHashMap<Integer, CachedTable> tables = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        CachedTable leastRecentlyUsed() {
+            return tables.values().iterator().next();
+        }
+    }
+
+    /**
+     * A table and the tick of its last use
+     */
+    private static class CachedTable {
+
+        private final double[] distances;
+        private long lastUse;
+
+        CachedTable(double[] distances, long lastUse) {
+            this.distances = distances;
+            this.lastUse = lastUse;
+        }
+    }
+}
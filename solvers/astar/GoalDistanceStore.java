@@ -0,0 +1,206 @@
+package solvers.astar;
+
+import utilities.Graph;
+import utilities.ProblemMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Optional on-disk store of goal-distance tables, one file per map.
+ * Files are named after a hash of the map's content, dimensions and the
+ * graph's connectedness, so they survive across runs and are shared by
+ * every JVM that solves problems on the same map. A file holds a small
+ * header followed by one record per goal: the goal's node index and the
+ * distance from every node to it. Records are served straight from a
+ * MappedByteBuffer rather than copied onto the heap, so only the pages
+ * that are used are read in and the page cache is shared between
+ * processes. Tables that are missing are appended under a file lock.
+ */
+public class GoalDistanceStore {
+
+    private static final int MAGIC = 0x54444831; // "TDH1"
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String EXTENSION = ".tdh";
+
+    private static File directory;
+    private static final Map<String, GoalDistanceStore> stores = new HashMap<>();
+    private static final Map<Graph, GoalDistanceStore> graphStores = new WeakHashMap<>();
+
+    private final File file;
+    private final int numNodes;
+    private final long recordBytes;
+    private final Map<Integer, Long> offsets; // goal -> offset of its distances
+    private final Map<Integer, DoubleBuffer> mapped; // goal -> its mapped distances
+    private long indexedBytes;                // bytes of the file already indexed
+
+    private GoalDistanceStore(File file, int numNodes) {
+        this.file = file;
+        this.numNodes = numNodes;
+        recordBytes = Integer.BYTES + (long) numNodes * Double.BYTES;
+        offsets = new HashMap<>();
+        mapped = new HashMap<>();
+        indexedBytes = HEADER_BYTES;
+    }
+
+    /**
+     * Sets the directory holding the stored tables
+     * @param storeDirectory the directory, or null to disable the store
+     */
+    public static synchronized void setDirectory(File storeDirectory) {
+        if (storeDirectory != null && !storeDirectory.isDirectory() && !storeDirectory.mkdirs())
+            throw new IllegalArgumentException("Cannot create heuristic store directory " + storeDirectory);
+        directory = storeDirectory;
+        stores.clear();
+        graphStores.clear();
+    }
+
+    public static synchronized File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the store for a graph
+     * @param graph the graph
+     * @return the store for the graph's map, or null if the store is disabled
+     */
+    public static synchronized GoalDistanceStore forGraph(Graph graph) {
+        if (directory == null) return null;
+        GoalDistanceStore store = graphStores.get(graph);
+        if (store != null) return store;
+
+        // graphs built from the same map share a file
+        String name = fileName(graph);
+        store = stores.get(name);
+        if (store == null) {
+            store = new GoalDistanceStore(new File(directory, name), graph.getSize());
+            stores.put(name, store);
+        }
+        graphStores.put(graph, store);
+        return store;
+    }
+
+    /**
+     * Reads the table of a goal from the store. The table is a read-only
+     * view of the mapped file; its absolute get(int) may be called from
+     * any thread
+     * @param goal index in the graph of the goal node
+     * @return the distance from every node to the goal, or null if it has not been stored
+     */
+    public synchronized DoubleBuffer read(int goal) {
+        DoubleBuffer table = mapped.get(goal);
+        if (table != null) return table;
+        try {
+            if (!offsets.containsKey(goal) && file.length() > indexedBytes) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                    index(raf.getChannel());
+                }
+            }
+            Long offset = offsets.get(goal);
+            if (offset == null) return null;
+            table = mapTable(offset);
+            mapped.put(goal, table);
+            return table;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read heuristic store " + file, e);
+        }
+    }
+
+    /**
+     * Appends the table of a goal to the store, unless another
+     * process stored it first
+     * @param goal index in the graph of the goal node
+     * @param table the distance from every node to the goal
+     */
+    public synchronized void append(int goal, double[] table) {
+        if (table.length != numNodes) throw new IllegalArgumentException("Table has " + table.length
+                + " entries, expected " + numNodes);
+        if (offsets.containsKey(goal)) return;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            FileLock lock = channel.lock();
+            try {
+                if (channel.size() == 0) writeHeader(channel);
+                index(channel);
+                if (offsets.containsKey(goal)) return;
+
+                ByteBuffer record = ByteBuffer.allocate((int) recordBytes);
+                record.putInt(goal);
+                record.asDoubleBuffer().put(table);
+                record.rewind();
+                long start = channel.size();
+                while (record.hasRemaining()) channel.write(record, start + record.position());
+                offsets.put(goal, start + Integer.BYTES);
+                indexedBytes = start + recordBytes;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write heuristic store " + file, e);
+        }
+    }
+
+    private void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC);
+        header.putInt(numNodes);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    // records the goals of every complete record not indexed yet
+    private void index(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (indexedBytes == HEADER_BYTES && size >= HEADER_BYTES) checkHeader(channel);
+        ByteBuffer goalBuffer = ByteBuffer.allocate(Integer.BYTES);
+        while (indexedBytes + recordBytes <= size) {
+            goalBuffer.clear();
+            channel.read(goalBuffer, indexedBytes);
+            goalBuffer.flip();
+            offsets.put(goalBuffer.getInt(), indexedBytes + Integer.BYTES);
+            indexedBytes += recordBytes;
+        }
+    }
+
+    private void checkHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        channel.read(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != numNodes)
+            throw new IllegalStateException("Heuristic store " + file + " does not match its map");
+    }
+
+    // maps just the record, so its pages are read in only when distances are looked up;
+    // the mapping stays valid after the file is closed
+    private DoubleBuffer mapTable(long offset) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset,
+                    (long) numNodes * Double.BYTES).asDoubleBuffer();
+        }
+    }
+
+    private static String fileName(Graph graph) {
+        ProblemMap map = graph.getMap();
+        String key = map.getHeight() + "x" + map.getWidth() + ":" + graph.getConnectedness() + ":" + map.getContent();
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder(graph.getMapTitle()).append('-');
+            for (int i = 0; i < 8; i++) name.append(String.format("%02x", digest[i]));
+            return name.append(EXTENSION).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package solvers.astar;
+
+import solvers.SearchStatistics;
+import utilities.IClosedList;
+import utilities.PackedStateClosedList;
+import utilities.ProblemInstance;
+import utilities.StateClosedList;
+import utilities.StateOpenList;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hash Distributed A* (Kishimoto et al.) for the states of a GenericAStar.
+ * Every state is owned by one worker thread, chosen by a hash of the state,
+ * and each worker keeps its own open and closed lists. Generated states are
+ * sent to their owner through its lock-free inbox, and the owner checks them
+ * against its closed list. Goals become the incumbent as soon as they are
+ * generated, and states whose f-value is not below the incumbent's cost are
+ * not expanded. The search ends when no worker has a state worth expanding and
+ * no state is in an inbox, so the incumbent is optimal.
+ */
+class HashDistributedSearch {
+
+    private static final long IDLE_PARK_NANOS = 50_000;
+
+    private final GenericAStar solver;
+    private final ProblemInstance problem;
+    private final boolean packedClosedList;
+    private final Worker[] workers;
+
+    // states in inboxes plus workers with states worth expanding, zero once the search is over
+    private final AtomicLong outstanding;
+    private volatile boolean stopped;
+    private volatile boolean budgetReached;
+    private State incumbent;
+
+    HashDistributedSearch(GenericAStar solver, ProblemInstance problem, int numThreads, boolean packedClosedList) {
+        this.solver = solver;
+        this.problem = problem;
+        this.packedClosedList = packedClosedList;
+        workers = new Worker[numThreads];
+        for (int i = 0; i < numThreads; i++) workers[i] = new Worker();
+        outstanding = new AtomicLong();
+    }
+
+    /**
+     * Searches from a root state
+     * @param root the root state, with its heuristic set
+     * @return the cheapest goal state, or null if there is none or the
+     *         budget of the solve ran out first
+     */
+    State search(State root) {
+        send(root);
+        ExecutorService pool = Executors.newFixedThreadPool(workers.length);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (Worker worker : workers) running.add(pool.submit(worker::run));
+            for (Future<?> worker : running) worker.get();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during parallel search", e);
+        } catch (ExecutionException e) {
+            stopped = true;
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException("Parallel search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return budgetReached ? null : incumbent;
+    }
+
+    /**
+     * Returns the number of states each worker expanded
+     * @return the expansions of each worker
+     */
+    long[] getExpansions() {
+        long[] expansions = new long[workers.length];
+        for (int i = 0; i < workers.length; i++) expansions[i] = workers[i].statistics.getExpanded();
+        return expansions;
+    }
+
+    /**
+     * Adds the counters and allocated bytes of every worker to the
+     * statistics of the solver. Peak list sizes are those of the busiest worker.
+     * @param statistics the statistics of the solver
+     */
+    void addStatisticsTo(SearchStatistics statistics) {
+        for (Worker worker : workers) {
+            statistics.add(worker.statistics);
+            statistics.addAllocatedBytes(worker.allocatedBytes);
+        }
+    }
+
+    private void send(State state) {
+        outstanding.incrementAndGet();
+        workers[owner(state)].inbox.add(state);
+    }
+
+    private int owner(State state) {
+        int hash = state.hashCode() * 0x9E3779B9; // spread the bits of weak hash codes
+        return Math.floorMod(hash ^ (hash >>> 16), workers.length);
+    }
+
+    private synchronized double incumbentCost() {
+        return incumbent == null ? Double.POSITIVE_INFINITY : incumbent.gValue();
+    }
+
+    private synchronized void offerGoal(State goal) {
+        if (incumbent == null || goal.gValue() < incumbent.gValue()) incumbent = goal;
+    }
+
+    private class Worker {
+
+        private final Queue<State> inbox = new ConcurrentLinkedQueue<>();
+        private final StateOpenList openList = new StateOpenList();
+        private final IClosedList closedList = packedClosedList ? new PackedStateClosedList(problem) : new StateClosedList();
+        private final SearchStatistics statistics = new SearchStatistics();
+        private boolean active; // holds one unit of outstanding
+        private long allocatedBytes;
+
+        void run() {
+            long allocatedBefore = SearchStatistics.currentThreadAllocatedBytes();
+            try {
+                search();
+            } finally {
+                allocatedBytes = allocatedBefore == SearchStatistics.UNSUPPORTED ? SearchStatistics.UNSUPPORTED
+                        : SearchStatistics.currentThreadAllocatedBytes() - allocatedBefore;
+            }
+        }
+
+        private void search() {
+            while (!stopped) {
+                State received;
+                while ((received = inbox.poll()) != null) {
+                    // the first state received keeps its unit of outstanding for the worker
+                    if (active) outstanding.decrementAndGet();
+                    active = true;
+                    receive(received);
+                }
+
+                statistics.updatePeaks(openList.size(), closedList.size());
+                State current = openList.peek();
+                if (current != null && current.gValue() + current.hValue() < incumbentCost()) {
+                    openList.remove();
+                    if (isGoal(current)) {
+                        offerGoal(current);
+                    } else if (solver.countParallelExpansion()) {
+                        budgetReached = true;
+                        stopped = true;
+                    } else {
+                        statistics.countExpanded();
+                        Iterator<? extends State> neighbors = solver.successors(current, problem);
+                        while (neighbors.hasNext() && !stopped) {
+                            if (solver.countParallelGeneration()) {
+                                budgetReached = true;
+                                stopped = true;
+                            } else {
+                                send(neighbors.next());
+                            }
+                        }
+                    }
+                } else if (active) {
+                    // nothing worth expanding until a state arrives
+                    active = false;
+                    if (outstanding.decrementAndGet() == 0) stopped = true;
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+            }
+        }
+
+        private void receive(State state) {
+            if (state.isRoot()) {
+                openList.add(state);
+                closedList.add(state);
+                return;
+            }
+            statistics.countGenerated();
+            if (!solver.getReservation().isValid(state)) return;
+            int closedBefore = closedList.size();
+            if (closedList.contains(state)) {
+                statistics.countClosedListHit();
+                return;
+            }
+            solver.setStateHeuristic(state);
+            state.updateCATViolations(solver.getConflictAvoidanceTable());
+            closedList.add(state);
+            if (state.belongsInClosedList() && closedList.size() == closedBefore) statistics.countReopened();
+            // a goal bounds the search as soon as it is generated
+            if (isGoal(state)) offerGoal(state);
+            else openList.add(state);
+        }
+
+        private boolean isGoal(State state) {
+            return solver.isGoal(problem, state) && state.timeStep() >= solver.getReservation().getLastTimeStep();
+        }
+    }
+}
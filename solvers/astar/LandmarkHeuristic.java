@@ -0,0 +1,111 @@
+package solvers.astar;
+
+import utilities.DialSearch;
+import utilities.Graph;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Differential heuristic that stores the distances from a few landmarks
+ * instead of one table per goal. By the triangle inequality, the distance
+ * between a node and a goal is at least |d(L, node) - d(L, goal)| for every
+ * landmark L, and the heuristic is the largest of these bounds. Memory is
+ * O(K * N) for K landmarks however many agents there are, at the cost of a
+ * less informed heuristic than TDHeuristic. Landmarks are chosen by
+ * farthest-point selection, once per graph, and shared.
+ */
+public class LandmarkHeuristic extends TDHeuristic {
+
+    private static final float UNREACHABLE = -1;
+
+    private static final Map<Graph, float[][]> landmarkTables = new WeakHashMap<>();
+
+    private final float[][] landmarks; // distance from each landmark to every node
+
+    /**
+     * Constructor that creates a landmark heuristic for any goal in the graph
+     * @param graph the graph
+     * @param numLandmarks the number of landmarks to use
+     */
+    public LandmarkHeuristic(Graph graph, int numLandmarks) {
+        super(graph);
+        if (numLandmarks < 1) throw new IllegalArgumentException("Need at least one landmark: " + numLandmarks);
+        landmarks = landmarksFor(graph, Math.min(numLandmarks, graph.getSize()));
+    }
+
+    @Override
+    public double trueDistance(int nodeIndex, int goalIndex) {
+        float bound = 0;
+        for (float[] landmark : landmarks) {
+            float toNode = landmark[nodeIndex];
+            float toGoal = landmark[goalIndex];
+            if (toNode == UNREACHABLE || toGoal == UNREACHABLE) continue;
+            bound = Math.max(bound, Math.abs(toNode - toGoal));
+        }
+        return bound;
+    }
+
+    public int getNumLandmarks() {
+        return landmarks.length;
+    }
+
+    public String toString() {
+        return "Landmark heuristic (" + landmarks.length + " landmarks)";
+    }
+
+    // farthest-point selection is greedy, so the first K landmarks
+    // of a larger selection are the selection for K
+    private static float[][] landmarksFor(Graph graph, int numLandmarks) {
+        synchronized (landmarkTables) {
+            float[][] tables = landmarkTables.get(graph);
+            if (tables == null || tables.length < numLandmarks) {
+                tables = selectLandmarks(graph, numLandmarks);
+                landmarkTables.put(graph, tables);
+            }
+            return Arrays.copyOf(tables, numLandmarks);
+        }
+    }
+
+    private static float[][] selectLandmarks(Graph graph, int numLandmarks) {
+        int numNodes = graph.getSize();
+        float[][] tables = new float[numLandmarks][];
+        // distance from each node to its closest landmark so far
+        float[] closest = new float[numNodes];
+        Arrays.fill(closest, Float.POSITIVE_INFINITY);
+
+        // start from the node farthest from an arbitrary one
+        float[] start = distancesFrom(graph, 0);
+        int next = farthest(start);
+        for (int i = 0; i < numLandmarks; i++) {
+            tables[i] = distancesFrom(graph, next);
+            for (int node = 0; node < numNodes; node++) {
+                float distance = tables[i][node] == UNREACHABLE ? Float.POSITIVE_INFINITY : tables[i][node];
+                closest[node] = Math.min(closest[node], distance);
+            }
+            next = farthest(closest);
+        }
+        return tables;
+    }
+
+    // the node with the largest distance, preferring nodes that cannot be reached
+    private static int farthest(float[] distances) {
+        int best = 0;
+        for (int node = 1; node < distances.length; node++) {
+            float distance = distances[node] == UNREACHABLE ? Float.POSITIVE_INFINITY : distances[node];
+            float bestDistance = distances[best] == UNREACHABLE ? Float.POSITIVE_INFINITY : distances[best];
+            if (distance > bestDistance) best = node;
+        }
+        return best;
+    }
+
+    private static float[] distancesFrom(Graph graph, int source) {
+        double[] distances = DialSearch.distancesFrom(graph, source);
+        float[] result = new float[distances.length];
+        for (int node = 0; node < distances.length; node++) {
+            result[node] = node != source && distances[node] == 0 ? UNREACHABLE : (float) distances[node];
+        }
+        return result;
+    }
+}
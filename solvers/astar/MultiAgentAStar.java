@@ -9,6 +9,7 @@ import utilities.CoordinateClosedList;
 import utilities.ProblemInstance;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -53,6 +54,17 @@ public class MultiAgentAStar extends GenericAStar {
         return new MultiAgentState(costFunction, problemInstance);
     }
 
+    /**
+     * Enumerates the joint moves of a plain multi-agent state without
+     * collecting them in a list first. Subclasses whose states expand
+     * differently keep generating through expand().
+     */
+    @Override
+    protected Iterator<? extends State> successors(State state, ProblemInstance problem) {
+        if (state.getClass() != MultiAgentState.class) return super.successors(state, problem);
+        return ((MultiAgentState) state).successors(problem);
+    }
+
     public String toString() {
         return "Multiagent A* (" + costFunction.name() + ")";
     }
@@ -0,0 +1,103 @@
+package solvers.astar;
+
+import constants.Costs;
+import utilities.Graph;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Operator selection table for one goal, used by Enhanced Partial Expansion
+ * A*. For every node it lists the moves of an agent heading to the goal,
+ * sorted by how much each move raises the agent's f-value: the cost of the
+ * move plus the change in true distance. Waiting costs nothing at the goal.
+ * Rows are computed the first time a node is used, and tables are shared
+ * by every search that uses the same heuristic.
+ */
+public class OperatorTable {
+
+    public static final int WAIT = -1;
+
+    private static final Map<TDHeuristic, Map<Integer, OperatorTable>> tables = new WeakHashMap<>();
+
+    private final Graph graph;
+    private final WeakReference<TDHeuristic> heuristic; // the key of the table must stay collectable
+    private final int goal;
+    private final int[][] moves;     // per node: WAIT or edge index, by increasing delta
+    private final double[][] deltas; // per node: change in f of each move
+
+    private OperatorTable(Graph graph, TDHeuristic heuristic, int goal) {
+        this.graph = graph;
+        this.heuristic = new WeakReference<>(heuristic);
+        this.goal = goal;
+        moves = new int[graph.getSize()][];
+        deltas = new double[graph.getSize()][];
+    }
+
+    /**
+     * Returns the table of a goal
+     * @param graph the graph
+     * @param heuristic the heuristic the f-values are computed with
+     * @param goal index in the graph of the goal
+     * @return the table of the goal
+     */
+    public static OperatorTable forGoal(Graph graph, TDHeuristic heuristic, int goal) {
+        synchronized (tables) {
+            return tables.computeIfAbsent(heuristic, h -> new HashMap<>())
+                    .computeIfAbsent(goal, g -> new OperatorTable(graph, heuristic, goal));
+        }
+    }
+
+    /**
+     * Returns the moves from a node, sorted by increasing change in f
+     * @param node index in the graph of the node
+     * @return WAIT or the index of the edge of each move
+     */
+    public int[] moves(int node) {
+        fill(node);
+        return moves[node];
+    }
+
+    /**
+     * Returns the change in f of the moves from a node, in the order of moves()
+     * @param node index in the graph of the node
+     * @return the change in f of each move
+     */
+    public double[] deltas(int node) {
+        fill(node);
+        return deltas[node];
+    }
+
+    public int getGoal() {
+        return goal;
+    }
+
+    private synchronized void fill(int node) {
+        if (moves[node] != null) return;
+        int start = graph.getEdgeStart(node);
+        int count = graph.getEdgeEnd(node) - start + 1;
+        int[] nodeMoves = new int[count];
+        double[] nodeDeltas = new double[count];
+        TDHeuristic heuristic = this.heuristic.get();
+        double distance = heuristic.trueDistance(node, goal);
+
+        // insertion sort, rows have at most nine moves
+        for (int i = 0; i < count; i++) {
+            int move = i == 0 ? WAIT : start + i - 1;
+            double delta = move == WAIT ? (node == goal ? 0 : Costs.STAY)
+                    : graph.getEdgeCost(move) + heuristic.trueDistance(graph.getEdgeTarget(move), goal) - distance;
+            int j = i;
+            while (j > 0 && nodeDeltas[j - 1] > delta) {
+                nodeMoves[j] = nodeMoves[j - 1];
+                nodeDeltas[j] = nodeDeltas[j - 1];
+                j--;
+            }
+            nodeMoves[j] = move;
+            nodeDeltas[j] = delta;
+        }
+        deltas[node] = nodeDeltas;
+        moves[node] = nodeMoves;
+    }
+}
@@ -0,0 +1,399 @@
+package solvers.astar;
+
+import constants.Costs;
+import solvers.states.MultiAgentState;
+import solvers.states.SingleAgentState;
+import utilities.Agent;
+import utilities.Graph;
+import utilities.PackedKeyTable;
+import utilities.ProblemInstance;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Additive pairwise heuristic for sum of costs searches. The agents of a
+ * problem instance interact in pairs if the shortest paths they would follow
+ * alone collide. For the positions of an interacting pair in a state, a
+ * two-agent A* finds how much more the pair costs than the sum of its true
+ * distances. Disjoint pairs add up, so the heuristic is the sum of true
+ * distances plus a maximum-weight matching of these extra costs. Two-agent
+ * searches stop after a number of expansions and then use the lowest f-value
+ * left in their open list, which is still a lower bound. Results are cached
+ * per graph and goal pair as lower bounds on the pair's cost to go, which do
+ * not depend on the true distance heuristic, so they are shared by every
+ * search on the graph, e.g. by the merged groups of IndependenceDetection.
+ */
+public class PairwiseHeuristic {
+
+    public static final int DEFAULT_EXPANSION_LIMIT = 10000;
+    private static final int MAX_EXACT_MATCHING = 12; // agents, larger groups are matched greedily
+    private static final double EPSILON = 1e-9;
+
+    private static final Map<Graph, Map<Long, PackedKeyTable>> pairTables = new WeakHashMap<>();
+
+    private final Graph graph;
+    private final TDHeuristic heuristic;
+    private final int expansionLimit;
+    private final int numAgents;
+    private final boolean[][] interacting;
+    private final int numInteractingPairs;
+    // extra costs of the pairs of a state, per thread since parallel searches share the heuristic
+    private final ThreadLocal<double[][]> extraCosts;
+
+    /**
+     * Constructor that creates a pairwise heuristic for the agents of a
+     * problem instance
+     * @param problem the problem instance
+     */
+    public PairwiseHeuristic(ProblemInstance problem) {
+        this(problem, DEFAULT_EXPANSION_LIMIT);
+    }
+
+    /**
+     * Constructor that creates a pairwise heuristic for the agents of a
+     * problem instance
+     * @param problem the problem instance
+     * @param expansionLimit the most states a two-agent search expands
+     */
+    public PairwiseHeuristic(ProblemInstance problem, int expansionLimit) {
+        if (expansionLimit < 1) throw new IllegalArgumentException("Expansion limit must be positive: " + expansionLimit);
+        graph = problem.getGraph();
+        heuristic = problem.getTrueDistanceHeuristic();
+        this.expansionLimit = expansionLimit;
+
+        List<Agent> agents = problem.getAgents();
+        numAgents = agents.size();
+        int[][] paths = new int[numAgents][];
+        for (int i = 0; i < numAgents; i++) paths[i] = shortestPath(agents.get(i).position(), agents.get(i).goal());
+        interacting = new boolean[numAgents][numAgents];
+        int pairs = 0;
+        for (int i = 0; i < numAgents; i++) {
+            for (int j = i + 1; j < numAgents; j++) {
+                if (collide(paths[i], paths[j])) {
+                    interacting[i][j] = interacting[j][i] = true;
+                    pairs++;
+                }
+            }
+        }
+        numInteractingPairs = pairs;
+        extraCosts = ThreadLocal.withInitial(() -> new double[numAgents][numAgents]);
+    }
+
+    /**
+     * Returns how much more than the sum of its agents' true distances a
+     * state costs at least
+     * @param state the state, with the true distances of its agents set
+     * @return the extra cost of the interacting pairs of the state
+     */
+    public double bound(MultiAgentState state) {
+        if (numInteractingPairs == 0) return 0;
+        List<SingleAgentState> singles = state.getSingleAgentStates();
+        double[][] extra = extraCosts.get(); // pairs that do not interact stay 0
+        boolean any = false;
+        for (int i = 0; i < numAgents; i++) {
+            for (int j = i + 1; j < numAgents; j++) {
+                if (!interacting[i][j]) continue;
+                extra[i][j] = extra[j][i] = extraCost(singles.get(i), singles.get(j));
+                any |= extra[i][j] > 0;
+            }
+        }
+        if (!any) return 0;
+        return numAgents <= MAX_EXACT_MATCHING ? bestMatching(extra) : greedyMatching(extra);
+    }
+
+    public int getNumInteractingPairs() {
+        return numInteractingPairs;
+    }
+
+    public int getExpansionLimit() {
+        return expansionLimit;
+    }
+
+    /**
+     * Returns whether two agents of the problem instance interact
+     * @param first index of the first agent
+     * @param second index of the second agent
+     * @return true if the two-agent subproblem of the agents is searched
+     */
+    public boolean interacting(int first, int second) {
+        return interacting[first][second];
+    }
+
+    private double extraCost(SingleAgentState first, SingleAgentState second) {
+        int a = first.coordinate().getNode().getIndexInGraph();
+        int b = second.coordinate().getNode().getIndexInGraph();
+        int goalA = first.getAgentGoal();
+        int goalB = second.getAgentGoal();
+        long key = pairKey(a, b);
+        PackedKeyTable table = tableFor(goalA, goalB);
+        double costToGo;
+        synchronized (table) {
+            int slot = table.indexOf(key);
+            costToGo = slot == PackedKeyTable.NOT_FOUND ? Double.NaN : table.valueAt(slot);
+        }
+        if (Double.isNaN(costToGo)) {
+            // searched outside the lock, so other pairs of the goals are not held up
+            PairSearch search = new PairSearch(a, b, goalA, goalB);
+            search.run();
+            synchronized (table) {
+                search.publish(table);
+                costToGo = table.valueAt(table.indexOf(key));
+            }
+        }
+        return Math.max(0, costToGo - heuristic.trueDistance(a, goalA) - heuristic.trueDistance(b, goalB));
+    }
+
+    private PackedKeyTable tableFor(int goalA, int goalB) {
+        synchronized (pairTables) {
+            Map<Long, PackedKeyTable> tables = pairTables.computeIfAbsent(graph, g -> new HashMap<>());
+            return tables.computeIfAbsent(pairKey(goalA, goalB), key -> new PackedKeyTable(1));
+        }
+    }
+
+    private long pairKey(int a, int b) {
+        return (long) a * graph.getSize() + b;
+    }
+
+    // a shortest path to the goal, following true distances
+    private int[] shortestPath(int start, int goal) {
+        int[] path = new int[8];
+        int length = 0;
+        int current = start;
+        path[length++] = current;
+        while (current != goal && length <= graph.getSize()) {
+            double distance = heuristic.trueDistance(current, goal);
+            int next = -1;
+            for (int edge = graph.getEdgeStart(current); edge < graph.getEdgeEnd(current); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (Math.abs(heuristic.trueDistance(target, goal) + graph.getEdgeCost(edge) - distance) < EPSILON) {
+                    next = target;
+                    break;
+                }
+            }
+            if (next == -1) break; // the goal cannot be reached
+            if (length == path.length) path = Arrays.copyOf(path, 2 * length);
+            path[length++] = next;
+            current = next;
+        }
+        return Arrays.copyOf(path, length);
+    }
+
+    // agents stay at the end of their path
+    private static boolean collide(int[] first, int[] second) {
+        int steps = Math.max(first.length, second.length);
+        for (int t = 0; t < steps; t++) {
+            if (at(first, t) == at(second, t)) return true;
+            if (t > 0 && at(first, t) == at(second, t - 1) && at(first, t - 1) == at(second, t)) return true;
+        }
+        return false;
+    }
+
+    private static int at(int[] path, int t) {
+        return path[Math.min(t, path.length - 1)];
+    }
+
+    private static double bestMatching(double[][] extra) {
+        int n = extra.length;
+        double[] best = new double[1 << n]; // best matching among the agents of each subset
+        for (int subset = 1; subset < best.length; subset++) {
+            int i = Integer.numberOfTrailingZeros(subset);
+            int rest = subset & ~(1 << i);
+            double value = best[rest]; // agent i is unmatched
+            for (int others = rest; others != 0; others &= others - 1) {
+                int j = Integer.numberOfTrailingZeros(others);
+                if (extra[i][j] > 0) value = Math.max(value, extra[i][j] + best[rest & ~(1 << j)]);
+            }
+            best[subset] = value;
+        }
+        return best[best.length - 1];
+    }
+
+    private static double greedyMatching(double[][] extra) {
+        int n = extra.length;
+        boolean[] matched = new boolean[n];
+        double total = 0;
+        while (true) {
+            int bestI = -1, bestJ = -1;
+            for (int i = 0; i < n; i++) {
+                if (matched[i]) continue;
+                for (int j = i + 1; j < n; j++) {
+                    if (!matched[j] && extra[i][j] > 0 && (bestI == -1 || extra[i][j] > extra[bestI][bestJ])) {
+                        bestI = i;
+                        bestJ = j;
+                    }
+                }
+            }
+            if (bestI == -1) return total;
+            matched[bestI] = matched[bestJ] = true;
+            total += extra[bestI][bestJ];
+        }
+    }
+
+    /**
+     * A* over the joint positions of two agents, with the cost model of
+     * SingleAgentState: waiting is free at the goal only
+     */
+    private class PairSearch {
+
+        private final int startA, startB, goalA, goalB;
+        private final PackedKeyTable gValues;
+        private final PackedKeyTable closed;
+        private final Map<Long, Long> parents;
+
+        // open list: binary heap of joint positions by f, then h, with stale entries skipped
+        private long[] heapKeys = new long[64];
+        private double[] heapG = new double[64];
+        private double[] heapF = new double[64];
+        private int heapSize;
+
+        // lower bounds on the cost to go of the joint positions found
+        private long[] resultKeys = new long[8];
+        private double[] resultCosts = new double[8];
+        private int numResults;
+
+        PairSearch(int startA, int startB, int goalA, int goalB) {
+            this.startA = startA;
+            this.startB = startB;
+            this.goalA = goalA;
+            this.goalB = goalB;
+            gValues = new PackedKeyTable(1);
+            closed = new PackedKeyTable(1);
+            parents = new HashMap<>();
+        }
+
+        void run() {
+            long start = pairKey(startA, startB);
+            gValues.put(start, 0);
+            push(start, 0, h(startA, startB));
+            int expansions = 0;
+            while (heapSize > 0) {
+                long key = heapKeys[0];
+                double g = heapG[0];
+                double f = heapF[0];
+                if (closed.indexOf(key) != PackedKeyTable.NOT_FOUND) {
+                    pop();
+                    continue;
+                }
+                if (key == pairKey(goalA, goalB)) {
+                    storePath(key, g);
+                    return;
+                }
+                if (expansions++ == expansionLimit) {
+                    // every completion costs at least the lowest f-value left
+                    addResult(start, f);
+                    return;
+                }
+                pop();
+                closed.put(key, g);
+                expand(key, g);
+            }
+            addResult(start, 0); // no joint plan, leave it to the search
+        }
+
+        /**
+         * Adds the results to a shared table, keeping the larger of two
+         * lower bounds when another search stored the position first
+         * @param table the table of the goal pair, locked by the caller
+         */
+        void publish(PackedKeyTable table) {
+            for (int i = 0; i < numResults; i++) {
+                int slot = table.indexOf(resultKeys[i]);
+                if (slot == PackedKeyTable.NOT_FOUND) table.put(resultKeys[i], resultCosts[i]);
+                else if (resultCosts[i] > table.valueAt(slot)) table.setValueAt(slot, resultCosts[i]);
+            }
+        }
+
+        private void addResult(long key, double costToGo) {
+            if (numResults == resultKeys.length) {
+                resultKeys = Arrays.copyOf(resultKeys, 2 * numResults);
+                resultCosts = Arrays.copyOf(resultCosts, 2 * numResults);
+            }
+            resultKeys[numResults] = key;
+            resultCosts[numResults++] = costToGo;
+        }
+
+        private void expand(long key, double g) {
+            int a = (int) (key / graph.getSize());
+            int b = (int) (key % graph.getSize());
+            int endA = graph.getEdgeEnd(a);
+            int endB = graph.getEdgeEnd(b);
+            // edge index -1 stands for waiting
+            for (int edgeA = graph.getEdgeStart(a) - 1; edgeA < endA; edgeA++) {
+                boolean waitA = edgeA < graph.getEdgeStart(a);
+                int nextA = waitA ? a : graph.getEdgeTarget(edgeA);
+                double costA = waitA ? (a == goalA ? 0 : Costs.STAY) : graph.getEdgeCost(edgeA);
+                for (int edgeB = graph.getEdgeStart(b) - 1; edgeB < endB; edgeB++) {
+                    boolean waitB = edgeB < graph.getEdgeStart(b);
+                    int nextB = waitB ? b : graph.getEdgeTarget(edgeB);
+                    if (nextA == nextB || (nextA == b && nextB == a)) continue;
+                    long next = pairKey(nextA, nextB);
+                    if (closed.indexOf(next) != PackedKeyTable.NOT_FOUND) continue;
+                    double costB = waitB ? (b == goalB ? 0 : Costs.STAY) : graph.getEdgeCost(edgeB);
+                    double nextG = g + costA + costB;
+                    int slot = gValues.indexOf(next);
+                    if (slot != PackedKeyTable.NOT_FOUND && nextG >= gValues.valueAt(slot)) continue;
+                    gValues.put(next, nextG);
+                    parents.put(next, key);
+                    push(next, nextG, nextG + h(nextA, nextB));
+                }
+            }
+        }
+
+        // every joint position on an optimal plan gets its exact cost to go
+        private void storePath(long goal, double cost) {
+            for (Long key = goal; key != null; key = parents.get(key))
+                addResult(key, cost - gValues.valueAt(gValues.indexOf(key)));
+        }
+
+        private double h(int a, int b) {
+            return heuristic.trueDistance(a, goalA) + heuristic.trueDistance(b, goalB);
+        }
+
+        private void push(long key, double g, double f) {
+            if (heapSize == heapKeys.length) {
+                heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+                heapG = Arrays.copyOf(heapG, 2 * heapSize);
+                heapF = Arrays.copyOf(heapF, 2 * heapSize);
+            }
+            int index = heapSize++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!before(f, g, heapF[parent], heapG[parent])) break;
+                move(parent, index);
+                index = parent;
+            }
+            heapKeys[index] = key;
+            heapG[index] = g;
+            heapF[index] = f;
+        }
+
+        private void pop() {
+            int last = --heapSize;
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && before(heapF[child + 1], heapG[child + 1], heapF[child], heapG[child])) child++;
+                if (!before(heapF[child], heapG[child], heapF[last], heapG[last])) break;
+                move(child, index);
+                index = child;
+            }
+            if (heapSize > 0) move(last, index);
+        }
+
+        // lower f first, then higher g (lower h)
+        private boolean before(double f, double g, double otherF, double otherG) {
+            return f < otherF || (f == otherF && g > otherG);
+        }
+
+        private void move(int from, int to) {
+            heapKeys[to] = heapKeys[from];
+            heapG[to] = heapG[from];
+            heapF[to] = heapF[from];
+        }
+    }
+}
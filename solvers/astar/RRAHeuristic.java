@@ -0,0 +1,171 @@
+package solvers.astar;
+
+import constants.Costs;
+import utilities.Agent;
+import utilities.Connected;
+import utilities.Graph;
+import utilities.PackedKeyTable;
+import utilities.ProblemInstance;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * True-distance heuristic computed lazily with Reverse Resumable A*, as in
+ * Hierarchical Cooperative A*. Each goal gets a backward A* search from the
+ * goal towards its agent's start, guided by the grid distance to the start.
+ * A query is answered as soon as the queried node is closed, and the search
+ * is paused and resumed by the next query that needs more of the graph.
+ * The grid distance is consistent, so closed nodes hold their exact distance
+ * to the goal. Goals without an agent in the problem instance are searched
+ * like Dijkstra. Distances are 0 for nodes that cannot reach the goal,
+ * like TDHeuristic.
+ */
+public class RRAHeuristic extends TDHeuristic {
+
+    private final Graph graph;
+    private final int width; // width of the map including its border
+    private final boolean fourConnected;
+    private final Map<Integer, Integer> startsByGoal;
+    private final Map<Integer, GoalSearch> searches;
+
+    /**
+     * Constructor that creates a heuristic for the agents of a problem
+     * instance without searching the graph yet
+     * @param problem the problem instance
+     */
+    public RRAHeuristic(ProblemInstance problem) {
+        super(problem.getGraph());
+        graph = problem.getGraph();
+        width = graph.getMap().getWidth() + 2;
+        fourConnected = graph.getConnectedness() == Connected.FOUR;
+        startsByGoal = new HashMap<>();
+        for (Agent agent : problem.getAgents()) startsByGoal.put(agent.goal(), agent.position());
+        searches = new HashMap<>();
+    }
+
+    @Override
+    public double trueDistance(int nodeIndex, int goalIndex) {
+        GoalSearch search;
+        synchronized (searches) {
+            search = searches.get(goalIndex);
+            if (search == null) {
+                Integer start = startsByGoal.get(goalIndex);
+                search = new GoalSearch(goalIndex, start == null ? GoalSearch.NO_START : start);
+                searches.put(goalIndex, search);
+            }
+        }
+        return search.distanceTo(nodeIndex);
+    }
+
+    // lower bound on the cost between two nodes, ignoring obstacles and terrain
+    private double gridDistance(int from, int to) {
+        int fromMap = graph.getNodes().get(from).getIndexInMap();
+        int toMap = graph.getNodes().get(to).getIndexInMap();
+        int dx = Math.abs(fromMap % width - toMap % width);
+        int dy = Math.abs(fromMap / width - toMap / width);
+        if (fourConnected) return Costs.ADJACENT * (dx + dy);
+        int diagonal = Math.min(dx, dy);
+        return Costs.DIAGONAL * diagonal + Costs.ADJACENT * (Math.max(dx, dy) - diagonal);
+    }
+
+    public String toString() {
+        return "RRA* heuristic";
+    }
+
+    /**
+     * Backward A* from one goal that can be paused and resumed
+     */
+    private class GoalSearch {
+
+        static final int NO_START = -1;
+
+        private final int start;
+        private final PackedKeyTable gValues; // best known distance to the goal
+        private final PackedKeyTable closed;  // exact distance to the goal
+
+        // open list: binary heap of nodes by f, with stale entries skipped
+        private int[] heapNodes;
+        private double[] heapG;
+        private double[] heapF;
+        private int heapSize;
+
+        GoalSearch(int goal, int start) {
+            this.start = start;
+            gValues = new PackedKeyTable(1);
+            closed = new PackedKeyTable(1);
+            heapNodes = new int[64];
+            heapG = new double[64];
+            heapF = new double[64];
+            gValues.put(goal, 0);
+            push(goal, 0);
+        }
+
+        synchronized double distanceTo(int node) {
+            int slot = closed.indexOf(node);
+            while (slot == PackedKeyTable.NOT_FOUND) {
+                if (heapSize == 0) return 0; // unreachable
+                expandNext();
+                slot = closed.indexOf(node);
+            }
+            return closed.valueAt(slot);
+        }
+
+        private void expandNext() {
+            int node = heapNodes[0];
+            double g = heapG[0];
+            pop();
+            if (closed.indexOf(node) != PackedKeyTable.NOT_FOUND) return;
+            closed.put(node, g);
+            for (int edge = graph.getEdgeStart(node); edge < graph.getEdgeEnd(node); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (closed.indexOf(target) != PackedKeyTable.NOT_FOUND) continue;
+                double next = g + graph.getEdgeCost(edge);
+                int slot = gValues.indexOf(target);
+                if (slot != PackedKeyTable.NOT_FOUND && next >= gValues.valueAt(slot)) continue;
+                gValues.put(target, next);
+                push(target, next);
+            }
+        }
+
+        private void push(int node, double g) {
+            double f = g + (start == NO_START ? 0 : gridDistance(node, start));
+            if (heapSize == heapNodes.length) {
+                heapNodes = Arrays.copyOf(heapNodes, 2 * heapSize);
+                heapG = Arrays.copyOf(heapG, 2 * heapSize);
+                heapF = Arrays.copyOf(heapF, 2 * heapSize);
+            }
+            int index = heapSize++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heapF[parent] <= f) break;
+                move(parent, index);
+                index = parent;
+            }
+            heapNodes[index] = node;
+            heapG[index] = g;
+            heapF[index] = f;
+        }
+
+        private void pop() {
+            int last = --heapSize;
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= heapSize) break;
+                if (child + 1 < heapSize && heapF[child + 1] < heapF[child]) child++;
+                if (heapF[child] >= heapF[last]) break;
+                move(child, index);
+                index = child;
+            }
+            if (heapSize > 0) move(last, index);
+        }
+
+        private void move(int from, int to) {
+            heapNodes[to] = heapNodes[from];
+            heapG[to] = heapG[from];
+            heapF[to] = heapF[from];
+        }
+    }
+}
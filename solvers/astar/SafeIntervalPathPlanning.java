@@ -0,0 +1,359 @@
+package solvers.astar;
+
+import constants.CostFunction;
+import constants.Costs;
+import solvers.ConstrainedSolver;
+import solvers.MultiLevelCAT;
+import solvers.MultiLevelReservation;
+import solvers.SearchStatistics;
+import solvers.states.MultiAgentState;
+import solvers.states.SingleAgentState;
+import utilities.Agent;
+import utilities.Graph;
+import utilities.Node;
+import utilities.PackedKeyTable;
+import utilities.Path;
+import utilities.ProblemInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Safe Interval Path Planning (Phillips and Likhachev) for a single agent.
+ * The safe intervals of a node are the maximal ranges of time steps at
+ * which the reservations leave it free. Instead of a state for every time
+ * step the agent waits, the search generates one state per move, arriving
+ * at the earliest time step of each safe interval of the target node that
+ * it can reach by waiting at the current node. Arriving later in the same
+ * interval is never cheaper, since waiting costs the same at every node,
+ * except at the goal, where it is free; so at the goal, waits are generated
+ * one step at a time like in space-time A*. Paths cost the same as those of
+ * SingleAgentAStar; ties between paths of equal cost, which space-time A*
+ * breaks by conflict avoidance table violations, may be broken differently.
+ *
+ * Like SpaceTimeAStar, search nodes live in parallel primitive arrays that
+ * are reused between calls, and State objects are only created for the path.
+ */
+public class SafeIntervalPathPlanning extends ConstrainedSolver {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int NO_PARENT = -1;
+    private static final int NO_GOAL = -1;
+
+    // search node arena (struct of arrays), indexed by slot
+    private int[] nodes;
+    private int[] timeSteps;     // time step of arrival at the node
+    private int[] intervalEnds;  // last time step of the safe interval of the arrival
+    private float[] gValues;
+    private float[] hValues;
+    private int[] parents;
+    private int[] violations;
+    private int numStates;
+
+    // open list: binary heap of slots
+    private int[] heap;
+    private int heapSize;
+
+    // closed list: (time step, node) up to the reservation horizon, node only beyond it
+    private PackedKeyTable timedClosedList;
+    private float[] permanentClosedList;
+    private int[] permanentStamps;
+    private int numPermanent; // nodes in the permanent closed list for this stamp
+
+    // safe intervals of each node, computed when the search first reaches it
+    private int[][] intervals;
+    private int[] intervalStamps;
+    private int stamp;
+
+    private int goalSlot;
+    private int horizon;
+    private ProblemInstance problemInstance;
+
+    /**
+     * Constructor that creates a solver that uses safe interval path
+     * planning to solve single-agent problem instances
+     */
+    public SafeIntervalPathPlanning() {
+        this(null, -1);
+    }
+
+    public SafeIntervalPathPlanning(ConstrainedSolver highLevel, int groupToSolve) {
+        super(highLevel, groupToSolve);
+        nodes = new int[INITIAL_CAPACITY];
+        timeSteps = new int[INITIAL_CAPACITY];
+        intervalEnds = new int[INITIAL_CAPACITY];
+        gValues = new float[INITIAL_CAPACITY];
+        hValues = new float[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        violations = new int[INITIAL_CAPACITY];
+        heap = new int[INITIAL_CAPACITY];
+        timedClosedList = new PackedKeyTable(1, INITIAL_CAPACITY);
+        permanentClosedList = new float[0];
+        permanentStamps = new int[0];
+        intervals = new int[0][];
+        intervalStamps = new int[0];
+    }
+
+    @Override
+    public boolean subSolve(ProblemInstance problem) {
+        if (problem.getAgents().size() > 1)
+            throw new IllegalArgumentException("Passed ProblemInstance has more than one agent!");
+        init(problem);
+
+        Graph graph = problem.getGraph();
+        List<Node> graphNodes = graph.getNodes();
+        TDHeuristic heuristic = problem.getTrueDistanceHeuristic();
+        MultiLevelReservation reservation = getReservation();
+        MultiLevelCAT conflictAvoidanceTable = getConflictAvoidanceTable();
+        Agent agent = problem.getAgents().get(0);
+        int goal = agent.goal();
+        horizon = reservation.getLastTimeStep();
+        SearchStatistics statistics = getStatistics();
+
+        // the agent starts at its position even if it is reserved at time step 0
+        Node start = graphNodes.get(agent.position());
+        int[] startIntervals = intervals(start, goal, reservation);
+        int startEnd = startIntervals.length > 0 && startIntervals[0] == 0 ? startIntervals[1] : 0;
+        int root = newState(agent.position(), 0, startEnd, 0, heuristic.trueDistance(start, goal), NO_PARENT, 0);
+        push(root);
+        close(root);
+        statistics.countGenerated();
+        while (heapSize > 0) {
+            statistics.updatePeaks(heapSize, timedClosedList.size() + numPermanent);
+            int current = pop();
+            // the agent can wait at its goal until the last reserved time step
+            if (nodes[current] == goal && intervalEnds[current] >= horizon) {
+                goalSlot = current;
+                return true;
+            }
+
+            if (countExpansion()) return false;
+            statistics.countExpanded();
+            Node currentNode = graphNodes.get(nodes[current]);
+            if (nodes[current] == goal) {
+                // waiting at the goal is free, so later departures are not dominated
+                generate(current, currentNode, currentNode, 0, timeSteps[current] + 1, intervalEnds[current],
+                        goal, heuristic, reservation, conflictAvoidanceTable);
+            }
+
+            for (int edge = graph.getEdgeStart(nodes[current]); edge < graph.getEdgeEnd(nodes[current]); edge++) {
+                Node next = graphNodes.get(graph.getEdgeTarget(edge));
+                int[] nextIntervals = intervals(next, goal, reservation);
+                for (int i = 0; i < nextIntervals.length; i += 2) {
+                    generate(current, currentNode, next, (float) graph.getEdgeCost(edge),
+                            nextIntervals[i], nextIntervals[i + 1], goal, heuristic, reservation, conflictAvoidanceTable);
+                }
+            }
+        }
+        return false;
+    }
+
+    // generates the earliest arrival at next within the safe interval [first, last]
+    private void generate(int parent, Node parentNode, Node next, float moveCost, int first, int last, int goal,
+                          TDHeuristic heuristic, MultiLevelReservation reservation, MultiLevelCAT cat) {
+        int node = parentNode.getIndexInGraph();
+        int departure = timeSteps[parent];
+        // the agent may wait at the node until the end of its interval, but not at the goal
+        int intervalEnd = intervalEnds[parent];
+        int latestArrival = node == goal ? departure + 1 : intervalEnd == Integer.MAX_VALUE ? intervalEnd : intervalEnd + 1;
+        int arrival = Math.max(departure + 1, first);
+        int lastArrival = Math.min(last, latestArrival);
+        if (arrival > lastArrival) return;
+
+        SearchStatistics statistics = getStatistics();
+        statistics.countGenerated();
+        while (!reservation.isValid(next, parentNode, arrival, goal)) {
+            if (++arrival > lastArrival) return; // the move is reserved at every time step
+        }
+
+        float stayCost = node == goal ? 0 : (float) Costs.STAY;
+        float g = gValues[parent] + (arrival - departure - 1) * stayCost + moveCost;
+        int nextIndex = next.getIndexInGraph();
+        if (isClosed(nextIndex, arrival, g)) {
+            statistics.countClosedListHit();
+            return;
+        }
+
+        int violationCount = violations[parent];
+        for (int timeStep = departure + 1; timeStep < arrival; timeStep++) {
+            violationCount += cat.totalViolations(parentNode, parentNode, timeStep, goal);
+        }
+        violationCount += cat.totalViolations(next, parentNode, arrival, goal);
+        int slot = newState(nextIndex, arrival, last, g, heuristic.trueDistance(next, goal), parent, violationCount);
+        push(slot);
+        if (close(slot)) statistics.countReopened();
+    }
+
+    private int[] intervals(Node node, int goal, MultiLevelReservation reservation) {
+        int index = node.getIndexInGraph();
+        if (intervalStamps[index] != stamp) {
+            intervals[index] = reservation.safeIntervals(node, goal);
+            intervalStamps[index] = stamp;
+        }
+        return intervals[index];
+    }
+
+    // same rules as SpaceTimeAStar
+    private boolean isClosed(int node, int timeStep, float g) {
+        if (timeStep <= horizon) {
+            int slot = timedClosedList.indexOf(timedKey(node, timeStep));
+            return slot != PackedKeyTable.NOT_FOUND && g >= timedClosedList.valueAt(slot);
+        }
+        return permanentStamps[node] == stamp && g >= permanentClosedList[node];
+    }
+
+    // returns whether the slot replaced a closed entry with a higher g-value
+    private boolean close(int slot) {
+        int node = nodes[slot];
+        if (timeSteps[slot] <= horizon) {
+            int sizeBefore = timedClosedList.size();
+            timedClosedList.put(timedKey(node, timeSteps[slot]), gValues[slot]);
+            return timedClosedList.size() == sizeBefore;
+        }
+        boolean replaced = permanentStamps[node] == stamp;
+        if (!replaced) numPermanent++;
+        permanentStamps[node] = stamp;
+        permanentClosedList[node] = gValues[slot];
+        return replaced;
+    }
+
+    private static long timedKey(int node, int timeStep) {
+        return ((long) timeStep << Integer.SIZE) | node;
+    }
+
+    private int newState(int node, int timeStep, int intervalEnd, float g, double h, int parent, int violationCount) {
+        if (numStates == nodes.length) growArena();
+        int slot = numStates++;
+        nodes[slot] = node;
+        timeSteps[slot] = timeStep;
+        intervalEnds[slot] = intervalEnd;
+        gValues[slot] = g;
+        hValues[slot] = (float) h;
+        parents[slot] = parent;
+        violations[slot] = violationCount;
+        return slot;
+    }
+
+    private void growArena() {
+        int capacity = nodes.length * 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        timeSteps = Arrays.copyOf(timeSteps, capacity);
+        intervalEnds = Arrays.copyOf(intervalEnds, capacity);
+        gValues = Arrays.copyOf(gValues, capacity);
+        hValues = Arrays.copyOf(hValues, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        violations = Arrays.copyOf(violations, capacity);
+    }
+
+    // heap order: f, then CAT violations, then h
+    private boolean before(int a, int b) {
+        float fa = gValues[a] + hValues[a];
+        float fb = gValues[b] + hValues[b];
+        if (fa != fb) return fa < fb;
+        if (violations[a] != violations[b]) return violations[a] < violations[b];
+        return hValues[a] < hValues[b];
+    }
+
+    private void push(int slot) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+        int index = heapSize++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(slot, heap[parent])) break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], last)) break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        if (heapSize > 0) heap[index] = last;
+        return top;
+    }
+
+    /**
+     * Reset the arena, open and closed lists and safe intervals to solve a new problem.
+     */
+    private void init(ProblemInstance problem) {
+        problemInstance = problem;
+        goalSlot = NO_GOAL;
+        numStates = 0;
+        heapSize = 0;
+        timedClosedList.clear();
+        numPermanent = 0;
+        int graphSize = problem.getGraph().getSize();
+        if (permanentStamps.length < graphSize) {
+            permanentClosedList = new float[graphSize];
+            permanentStamps = new int[graphSize];
+            intervals = new int[graphSize][];
+            intervalStamps = new int[graphSize];
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Construct the path to the goal as a list of single-agent
+     * multi-agent states, like SingleAgentAStar, with a state for every
+     * time step the agent waits
+     * @return the path found by the last call to solve
+     */
+    @Override
+    public Path getPath() {
+        List<State> result = new ArrayList<>();
+        if (goalSlot == NO_GOAL) return new Path(result);
+
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = goalSlot; slot != NO_PARENT; slot = parents[slot]) slots.add(slot);
+        Collections.reverse(slots);
+
+        List<Node> graphNodes = problemInstance.getGraph().getNodes();
+        SingleAgentState single = null;
+        State multi = null;
+        int previous = NO_PARENT;
+        for (int slot : slots) {
+            // waits at the previous node until the time step before the arrival
+            for (int timeStep = previous == NO_PARENT ? timeSteps[slot] : timeSteps[previous] + 1;
+                 timeStep < timeSteps[slot]; timeStep++) {
+                single = new SingleAgentState(0, graphNodes.get(nodes[previous]), single, problemInstance);
+                multi = new MultiAgentState(multi, CostFunction.SUM_OF_COSTS, singleton(single), problemInstance);
+                result.add(multi);
+            }
+            single = single == null ? new SingleAgentState(0, problemInstance)
+                                    : new SingleAgentState(0, graphNodes.get(nodes[slot]), single, problemInstance);
+            multi = new MultiAgentState(multi, CostFunction.SUM_OF_COSTS, singleton(single), problemInstance);
+            result.add(multi);
+            previous = slot;
+        }
+        // waits at the goal until the last reserved time step
+        for (int timeStep = timeSteps[goalSlot] + 1; timeStep <= horizon; timeStep++) {
+            single = new SingleAgentState(0, graphNodes.get(nodes[goalSlot]), single, problemInstance);
+            multi = new MultiAgentState(multi, CostFunction.SUM_OF_COSTS, singleton(single), problemInstance);
+            result.add(multi);
+        }
+        return new Path(result);
+    }
+
+    private static List<SingleAgentState> singleton(SingleAgentState state) {
+        List<SingleAgentState> singleStates = new ArrayList<>();
+        singleStates.add(state);
+        return singleStates;
+    }
+
+    public String toString() {
+        return "SIPP";
+    }
+}
@@ -0,0 +1,289 @@
+package solvers.astar;
+
+import constants.CostFunction;
+import constants.Costs;
+import solvers.ConstrainedSolver;
+import solvers.MultiLevelCAT;
+import solvers.MultiLevelReservation;
+import solvers.SearchStatistics;
+import solvers.states.MultiAgentState;
+import solvers.states.SingleAgentState;
+import utilities.Agent;
+import utilities.Graph;
+import utilities.Node;
+import utilities.PackedKeyTable;
+import utilities.Path;
+import utilities.ProblemInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Space-time A* for a single agent that produces the same paths as SingleAgentAStar
+ * without allocating a State per generated node. Search nodes live in parallel
+ * primitive arrays (node index, time step, g, h, parent slot and CAT violations)
+ * that are reused between calls, the open list is a binary heap of slots, and
+ * the closed list is primitive as well. State objects are only created for the
+ * final path.
+ */
+public class SpaceTimeAStar extends ConstrainedSolver {
+
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int NO_PARENT = -1;
+    private static final int NO_GOAL = -1;
+
+    // search node arena (struct of arrays), indexed by slot
+    private int[] nodes;
+    private int[] timeSteps;
+    private float[] gValues;
+    private float[] hValues;
+    private int[] parents;
+    private int[] violations;
+    private int numStates;
+
+    // open list: binary heap of slots
+    private int[] heap;
+    private int heapSize;
+
+    // closed list: (time step, node) up to the reservation horizon, node only beyond it
+    private PackedKeyTable timedClosedList;
+    private float[] permanentClosedList;
+    private int[] permanentStamps;
+    private int stamp;
+    private int numPermanent; // nodes in the permanent closed list for this stamp
+
+    private int goalSlot;
+    private ProblemInstance problemInstance;
+
+    /**
+     * Constructor that creates a solver that uses allocation-free
+     * space-time A* to solve single-agent problem instances
+     */
+    public SpaceTimeAStar() {
+        this(null, -1);
+    }
+
+    public SpaceTimeAStar(ConstrainedSolver highLevel, int groupToSolve) {
+        super(highLevel, groupToSolve);
+        nodes = new int[INITIAL_CAPACITY];
+        timeSteps = new int[INITIAL_CAPACITY];
+        gValues = new float[INITIAL_CAPACITY];
+        hValues = new float[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        violations = new int[INITIAL_CAPACITY];
+        heap = new int[INITIAL_CAPACITY];
+        timedClosedList = new PackedKeyTable(1, INITIAL_CAPACITY);
+        permanentClosedList = new float[0];
+        permanentStamps = new int[0];
+    }
+
+    @Override
+    public boolean subSolve(ProblemInstance problem) {
+        if (problem.getAgents().size() > 1)
+            throw new IllegalArgumentException("Passed ProblemInstance has more than one agent!");
+        init(problem);
+
+        Graph graph = problem.getGraph();
+        List<Node> graphNodes = graph.getNodes();
+        TDHeuristic heuristic = problem.getTrueDistanceHeuristic();
+        MultiLevelReservation reservation = getReservation();
+        MultiLevelCAT conflictAvoidanceTable = getConflictAvoidanceTable();
+        Agent agent = problem.getAgents().get(0);
+        int goal = agent.goal();
+        int horizon = reservation.getLastTimeStep();
+        SearchStatistics statistics = getStatistics();
+
+        int root = newState(agent.position(), 0, 0, heuristic.trueDistance(graphNodes.get(agent.position()), goal),
+                NO_PARENT, 0);
+        push(root);
+        close(root, horizon);
+        statistics.countGenerated();
+        while (heapSize > 0) {
+            statistics.updatePeaks(heapSize, timedClosedList.size() + numPermanent);
+            int current = pop();
+            int timeStep = timeSteps[current];
+            if (nodes[current] == goal && timeStep >= horizon) {
+                goalSlot = current;
+                return true;
+            }
+
+            if (countExpansion()) return false;
+            statistics.countExpanded();
+            Node currentNode = graphNodes.get(nodes[current]);
+            float stayCost = nodes[current] == goal ? 0 : (float) Costs.STAY;
+            generate(current, currentNode, currentNode, stayCost, goal, horizon,
+                    heuristic, reservation, conflictAvoidanceTable);
+
+            for (int edge = graph.getEdgeStart(nodes[current]); edge < graph.getEdgeEnd(nodes[current]); edge++) {
+                generate(current, currentNode, graphNodes.get(graph.getEdgeTarget(edge)), (float) graph.getEdgeCost(edge),
+                        goal, horizon, heuristic, reservation, conflictAvoidanceTable);
+            }
+        }
+        return false;
+    }
+
+    // mirrors GenericAStar.handleNeighbor for the successor of parent at next
+    private void generate(int parent, Node parentNode, Node next, float stepCost, int goal, int horizon,
+                          TDHeuristic heuristic, MultiLevelReservation reservation, MultiLevelCAT cat) {
+        SearchStatistics statistics = getStatistics();
+        statistics.countGenerated();
+        int timeStep = timeSteps[parent] + 1;
+        if (!reservation.isValid(next, parentNode, timeStep, goal)) return;
+
+        int node = next.getIndexInGraph();
+        float g = gValues[parent] + stepCost;
+        if (isClosed(node, timeStep, g, horizon)) {
+            statistics.countClosedListHit();
+            return;
+        }
+
+        int violationCount = violations[parent] + cat.totalViolations(next, parentNode, timeStep, goal);
+        int slot = newState(node, timeStep, g, heuristic.trueDistance(next, goal), parent, violationCount);
+        push(slot);
+        if (close(slot, horizon)) statistics.countReopened();
+    }
+
+    // same rules as CoordinateClosedList
+    private boolean isClosed(int node, int timeStep, float g, int horizon) {
+        if (timeStep <= horizon) {
+            int slot = timedClosedList.indexOf(timedKey(node, timeStep));
+            return slot != PackedKeyTable.NOT_FOUND && g >= timedClosedList.valueAt(slot);
+        }
+        return permanentStamps[node] == stamp && g >= permanentClosedList[node];
+    }
+
+    // returns whether the slot replaced a closed entry with a higher g-value
+    private boolean close(int slot, int horizon) {
+        int node = nodes[slot];
+        if (timeSteps[slot] <= horizon) {
+            int sizeBefore = timedClosedList.size();
+            timedClosedList.put(timedKey(node, timeSteps[slot]), gValues[slot]);
+            return timedClosedList.size() == sizeBefore;
+        }
+        boolean replaced = permanentStamps[node] == stamp;
+        if (!replaced) numPermanent++;
+        permanentStamps[node] = stamp;
+        permanentClosedList[node] = gValues[slot];
+        return replaced;
+    }
+
+    private static long timedKey(int node, int timeStep) {
+        return ((long) timeStep << Integer.SIZE) | node;
+    }
+
+    private int newState(int node, int timeStep, float g, double h, int parent, int violationCount) {
+        if (numStates == nodes.length) growArena();
+        int slot = numStates++;
+        nodes[slot] = node;
+        timeSteps[slot] = timeStep;
+        gValues[slot] = g;
+        hValues[slot] = (float) h;
+        parents[slot] = parent;
+        violations[slot] = violationCount;
+        return slot;
+    }
+
+    private void growArena() {
+        int capacity = nodes.length * 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        timeSteps = Arrays.copyOf(timeSteps, capacity);
+        gValues = Arrays.copyOf(gValues, capacity);
+        hValues = Arrays.copyOf(hValues, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        violations = Arrays.copyOf(violations, capacity);
+    }
+
+    // heap order: f, then CAT violations, then h
+    private boolean before(int a, int b) {
+        float fa = gValues[a] + hValues[a];
+        float fb = gValues[b] + hValues[b];
+        if (fa != fb) return fa < fb;
+        if (violations[a] != violations[b]) return violations[a] < violations[b];
+        return hValues[a] < hValues[b];
+    }
+
+    private void push(int slot) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heap.length * 2);
+        int index = heapSize++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(slot, heap[parent])) break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = slot;
+    }
+
+    private int pop() {
+        int top = heap[0];
+        int last = heap[--heapSize];
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], last)) break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        if (heapSize > 0) heap[index] = last;
+        return top;
+    }
+
+    /**
+     * Reset the arena, open and closed lists to solve a new problem.
+     */
+    private void init(ProblemInstance problem) {
+        problemInstance = problem;
+        goalSlot = NO_GOAL;
+        numStates = 0;
+        heapSize = 0;
+        timedClosedList.clear();
+        numPermanent = 0;
+        int graphSize = problem.getGraph().getSize();
+        if (permanentStamps.length < graphSize) {
+            permanentClosedList = new float[graphSize];
+            permanentStamps = new int[graphSize];
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Construct the path to the goal as a list of single-agent
+     * multi-agent states, like SingleAgentAStar
+     * @return the path found by the last call to solve
+     */
+    @Override
+    public Path getPath() {
+        List<State> result = new ArrayList<>();
+        if (goalSlot == NO_GOAL) return new Path(result);
+
+        List<Integer> slots = new ArrayList<>();
+        for (int slot = goalSlot; slot != NO_PARENT; slot = parents[slot]) slots.add(slot);
+        Collections.reverse(slots);
+
+        List<Node> graphNodes = problemInstance.getGraph().getNodes();
+        SingleAgentState single = null;
+        State multi = null;
+        for (int slot : slots) {
+            single = single == null ? new SingleAgentState(0, problemInstance)
+                                    : new SingleAgentState(0, graphNodes.get(nodes[slot]), single, problemInstance);
+            multi = new MultiAgentState(multi, CostFunction.SUM_OF_COSTS, singleton(single), problemInstance);
+            result.add(multi);
+        }
+        return new Path(result);
+    }
+
+    private static List<SingleAgentState> singleton(SingleAgentState state) {
+        List<SingleAgentState> singleStates = new ArrayList<>();
+        singleStates.add(state);
+        return singleStates;
+    }
+
+    public String toString() {
+        return "Space-time A*";
+    }
+}
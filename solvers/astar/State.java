@@ -35,9 +35,21 @@ public abstract class State implements Comparable<State> {
         if (res == 0) {
             res = conflictViolations - other.conflictViolations;
         }
+        if (res == 0) {
+            res = tieBreaker() - other.tieBreaker();
+        }
     	return (int) Math.signum(res);
     }
 
+    /**
+     * Value that orders states with equal f-values and CAT violations,
+     * lower first. Defaults to the h-value, so deeper states go first
+     * @return the tie-breaking value of the state
+     */
+    public double tieBreaker() {
+        return hValue;
+    }
+
     /**
      * Return the g-value of the state
      * @return The g-value of the state
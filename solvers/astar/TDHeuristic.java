@@ -1,87 +1,300 @@
 package solvers.astar;
 
-import solvers.states.SingleAgentState;
 import utilities.Agent;
+import utilities.DialSearch;
+import utilities.Graph;
 import utilities.ProblemInstance;
 import utilities.Node;
 
+import java.nio.DoubleBuffer;
 import java.util.*;
-
-//TODO make it possible to use makespan heuristic
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Object used to find an abbreviated all-pairs-shortest-paths lookup table
- * to compute a true-distance heuristic
+ * to compute a true-distance heuristic. Tables for goals that are neither
+ * cached nor in the on-disk store (if one is configured) are computed in
+ * parallel on a shared ForkJoinPool. On graphs below the all-pairs threshold
+ * every distance is read from an AllPairsDistances matrix instead, so no
+ * per-goal work is done. Tables found in the store are read from the
+ * mapped file rather than copied onto the heap. A constructed heuristic is
+ * never modified and may be shared between threads.
  */
 
 public class TDHeuristic {
 
-    // table to look up costs
-    private double[][] lookupTable;
-    private Map<Integer, double[]> lookup;
+    private static SharedPool pool = new SharedPool(Runtime.getRuntime().availableProcessors());
+    private static int allPairsThreshold = 0;
+
+    // tables to look up costs, by agent and by goal; both share the
+    // arrays held by GoalDistanceCache, which must not be modified.
+    // null when distances come from the all-pairs matrix instead
+    private final double[][] lookupTable;
+    private final Map<Integer, double[]> lookup;
+    // tables of the goals read from GoalDistanceStore, by goal
+    private final Map<Integer, DoubleBuffer> storedLookup;
+    private final List<Integer> goals;
+    private final AllPairsDistances allPairs;
+
+    // fewest moves to each goal, for makespan searches; built on first use
+    private final Graph graph;
+    private final Map<Integer, int[]> stepTables;
+    private final long buildNanos;
 
     public TDHeuristic(ProblemInstance problem) {
-        initLookup(problem);
+        long start = System.nanoTime();
+        graph = problem.getGraph();
+        stepTables = new ConcurrentHashMap<>();
+        goals = new ArrayList<>();
+        for (Agent agent : problem.getAgents()) goals.add(agent.goal());
+        allPairs = allPairsFor(problem.getGraph());
+        if (allPairs != null) {
+            lookupTable = null;
+            lookup = null;
+            storedLookup = null;
+        } else {
+            lookupTable = new double[problem.getAgents().size()][];
+            storedLookup = new HashMap<>();
+            lookup = Collections.unmodifiableMap(initLookup(problem));
+        }
+        buildNanos = System.nanoTime() - start;
         //System.out.println(problem.getAgents());
     }
 
+    /**
+     * Constructor for heuristics that answer trueDistance without
+     * per-goal tables; subclasses must override trueDistance(int, int)
+     * @param graph the graph the heuristic answers queries on
+     */
+    protected TDHeuristic(Graph graph) {
+        this.graph = graph;
+        stepTables = new ConcurrentHashMap<>();
+        goals = Collections.emptyList();
+        allPairs = null;
+        lookupTable = null;
+        lookup = null;
+        storedLookup = null;
+        buildNanos = 0;
+    }
+
+    /**
+     * Sets the number of threads used to compute the tables of new goals
+     * @param parallelism the number of threads, 1 to compute them one after another
+     */
+    public static synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        if (parallelism == pool.executor.getParallelism()) return;
+        // builds still using the old pool shut it down when the last one ends
+        pool.replaced = true;
+        if (pool.users == 0) pool.executor.shutdown();
+        pool = new SharedPool(parallelism);
+    }
+
+    public static synchronized int getParallelism() {
+        return pool.executor.getParallelism();
+    }
+
+    private static synchronized SharedPool acquirePool() {
+        pool.users++;
+        return pool;
+    }
+
+    private static synchronized void releasePool(SharedPool used) {
+        if (--used.users == 0 && used.replaced) used.executor.shutdown();
+    }
+
+    /**
+     * Sets the largest graph for which every heuristic reads from a matrix
+     * of all-pairs distances, computed once per graph, instead of building
+     * tables for its goals
+     * @param maxNodes the largest number of nodes, 0 to never use the matrix
+     */
+    public static synchronized void setAllPairsThreshold(int maxNodes) {
+        if (maxNodes < 0) throw new IllegalArgumentException("Threshold must not be negative: " + maxNodes);
+        allPairsThreshold = maxNodes;
+    }
+
+    public static synchronized int getAllPairsThreshold() {
+        return allPairsThreshold;
+    }
+
+    private static AllPairsDistances allPairsFor(Graph graph) {
+        if (graph.getSize() > getAllPairsThreshold()) return null;
+        SharedPool executor = acquirePool();
+        try {
+            return AllPairsDistances.forGraph(graph, executor.executor);
+        } finally {
+            releasePool(executor);
+        }
+    }
+
     //public double trueDistance(Node pos, int agentId) {
     //    return lookupTable[agentId][pos.getIndexInGraph()];
     //}
 
     public double trueDistance(Node pos, int goalIndex) {
+        return trueDistance(pos.getIndexInGraph(), goalIndex);
+    }
+
+    /**
+     * Returns the cost of the cheapest path from a node to a goal
+     * @param nodeIndex index in the graph of the node
+     * @param goalIndex index in the graph of the goal
+     * @return the true distance from the node to the goal
+     */
+    public double trueDistance(int nodeIndex, int goalIndex) {
+        if (allPairs != null) return allPairs.distance(nodeIndex, goalIndex);
+        double[] table = lookup.get(goalIndex);
+        if (table != null) return table[nodeIndex];
+        DoubleBuffer stored = storedLookup.get(goalIndex);
+        if (stored == null) throw new IllegalArgumentException("No distance table for goal " + goalIndex
+                + ", known goals: " + lookup.keySet() + " " + storedLookup.keySet());
+        return stored.get(nodeIndex);
+    }
+
+    /**
+     * Returns the fewest moves from a node to a goal, regardless of their
+     * cost. This is the admissible per-agent heuristic for makespan, where
+     * every time step costs 1
+     * @param nodeIndex index in the graph of the node
+     * @param goalIndex index in the graph of the goal
+     * @return the fewest moves from the node to the goal, 0 if it cannot be reached
+     */
+    public int stepDistance(int nodeIndex, int goalIndex) {
+        return stepTables.computeIfAbsent(goalIndex, goal -> DialSearch.stepsFrom(graph, goal))[nodeIndex];
+    }
+
+    private Map<Integer, double[]> initLookup(ProblemInstance problem) {
+        List<Agent> agents = problem.getAgents();
+        Map<Integer, double[]> tables = new HashMap<>();
+        // reuse the tables of goals already searched on this graph, and
+        // run Dijkstra from the goals that have not been
+        GoalDistanceStore store = GoalDistanceStore.forGraph(graph);
+        List<Integer> missing = new ArrayList<>();
+        for (Agent agent : agents) {
+            double[] table = GoalDistanceCache.get(graph, agent.goal());
+            if (table != null) {
+                tables.put(agent.goal(), table);
+                continue;
+            }
+            DoubleBuffer stored = store == null ? null : store.read(agent.goal());
+            if (stored != null) storedLookup.put(agent.goal(), stored);
+            else missing.add(agent.goal());
+        }
+        tables.putAll(computeTables(graph, missing));
+
+        for (int agentId = 0; agentId < agents.size(); agentId++) {
+            lookupTable[agentId] = tables.get(agents.get(agentId).goal());
+        }
+        return tables;
+    }
+
+    private static Map<Integer, double[]> computeTables(Graph graph, List<Integer> goals) {
+        Map<Integer, double[]> tables = new HashMap<>();
+        if (goals.size() < 2 || getParallelism() == 1) {
+            for (int goal : goals) tables.put(goal, computeTable(graph, goal));
+            return tables;
+        }
+
+        List<Callable<double[]>> tasks = new ArrayList<>();
+        for (int goal : goals) tasks.add(() -> computeTable(graph, goal));
+        SharedPool executor = acquirePool();
         try {
-            return lookup.get(goalIndex)[pos.getIndexInGraph()];
-        } catch (NullPointerException e) {
-            System.out.println(goalIndex + " " + pos + "\n" + lookup.keySet());
-            throw e;
+            List<Future<double[]>> results = executor.executor.invokeAll(tasks);
+            for (int i = 0; i < goals.size(); i++) tables.put(goals.get(i), results.get(i).get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building heuristic", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build heuristic", e.getCause());
+        } finally {
+            releasePool(executor);
         }
+        return tables;
     }
 
-    private void initLookup(ProblemInstance problem) {
-        lookupTable = new double[problem.getAgents().size()][problem.getGraph().getSize()];
-        lookup = new HashMap<>();
-        // run UCS
-        // fill lookupTable with values from the closed list when UCS finishes
-        List<ProblemInstance> roots = rootStates(problem);
-        populateLookup(roots, problem);
+    private static double[] computeTable(Graph graph, int goal) {
+        double[] table = DialSearch.distancesFrom(graph, goal);
+        GoalDistanceCache.put(graph, goal, table);
+        GoalDistanceStore store = GoalDistanceStore.forGraph(graph);
+        if (store != null) store.append(goal, table);
+        return table;
     }
 
-    private List<ProblemInstance> rootStates(ProblemInstance problem) {
-        List<ProblemInstance> roots = new ArrayList<>();
-        for (Agent a : problem.getAgents()) {
-            ProblemInstance root = new ProblemInstance(problem.getGraph(),
-                    Collections.singletonList(new Agent(a.goal(), a.position(), a.id())),
-                    false);
-            roots.add(root);
-        }
-        return roots;
-    }
-
-    private void populateLookup(List<ProblemInstance> rootList, ProblemInstance problem) {
-        BreadthFirstSearch search = new BreadthFirstSearch();
-        int agentId = 0;
-        for (ProblemInstance root : rootList) {
-            search.solve(root);
-            lookup.put(root.getAgents().get(0).position(), new double[problem.getGraph().getSize()]);
-            for (State end : search.finalList()) {
-                SingleAgentState endState = (SingleAgentState) end;
-                Node pos = endState.coordinate().getNode();
-                lookup.get(root.getAgents().get(0).position())[pos.getIndexInGraph()] = endState.gValue();
-                lookupTable[agentId][pos.getIndexInGraph()] = endState.gValue();
+    /**
+     * Returns the time the constructor spent building tables; heuristics
+     * that search the graph lazily spend their time during the search
+     * @return the build time in nanoseconds
+     */
+    public long getBuildNanos() {
+        return buildNanos;
+    }
+
+    /**
+     * Returns the distance tables indexed by agent. The tables are shared
+     * and must not be modified, except those read from the store, which
+     * are copied. Not supported by heuristics that do not store per-goal
+     * tables
+     * @return the distance tables indexed by agent
+     */
+    public double[][] getLookupTable() {
+        if (lookupTable != null) {
+            double[][] rows = lookupTable.clone();
+            for (int agentId = 0; agentId < rows.length; agentId++) {
+                if (rows[agentId] == null) rows[agentId] = copyStored(goals.get(agentId));
             }
-            agentId++;
+            return rows;
         }
-        if (lookup.keySet().isEmpty()) {
-            System.out.println(problem);
+        if (allPairs == null) throw new UnsupportedOperationException(this + " does not store per-goal tables");
+        double[][] rows = new double[goals.size()][];
+        for (int agentId = 0; agentId < goals.size(); agentId++) rows[agentId] = allPairs.row(goals.get(agentId));
+        return rows;
+    }
+
+    /**
+     * Returns the distance tables indexed by goal node. The tables are
+     * shared and must not be modified, except those read from the store,
+     * which are copied. Not supported by heuristics that do not store
+     * per-goal tables
+     * @return an unmodifiable map from goal node to distance table
+     */
+    public Map<Integer, double[]> getLookup() {
+        if (lookup != null && storedLookup.isEmpty()) return lookup;
+        if (lookup != null) {
+            Map<Integer, double[]> tables = new HashMap<>(lookup);
+            for (int goal : storedLookup.keySet()) tables.put(goal, copyStored(goal));
+            return Collections.unmodifiableMap(tables);
         }
+        if (allPairs == null) throw new UnsupportedOperationException(this + " does not store per-goal tables");
+        Map<Integer, double[]> rows = new HashMap<>();
+        for (int goal : goals) rows.put(goal, allPairs.row(goal));
+        return Collections.unmodifiableMap(rows);
     }
 
+    private double[] copyStored(int goal) {
+        double[] table = new double[graph.getSize()];
+        storedLookup.get(goal).duplicate().get(table);
+        return table;
+    }
 
-    public double[][] getLookupTable() { return lookupTable; }
+    /**
+     * The pool that computes tables and the number of builds using it,
+     * both guarded by the class lock. A pool replaced by setParallelism
+     * keeps running until the last build using it ends
+     */
+    private static final class SharedPool {
 
-    public Map<Integer, double[]> getLookup() {
-        return lookup;
+        final ForkJoinPool executor;
+        int users;
+        boolean replaced;
+
+        SharedPool(int parallelism) {
+            executor = new ForkJoinPool(parallelism);
+        }
     }
 
 }
@@ -1,7 +1,6 @@
 package solvers.c_astar;
 
 import solvers.ConstrainedSolver;
-import solvers.Reservation;
 import solvers.astar.MultiAgentAStar;
 import solvers.astar.SingleAgentAStar;
 import solvers.astar.State;
@@ -10,59 +9,66 @@ import solvers.states.MultiAgentState;
 import utilities.Agent;
 import utilities.Path;
 import utilities.ProblemInstance;
-import constants.Keys;
 
 import utilities.Util;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.function.Supplier;
 
 /**
  * Class implementing the Cooperative A* algorithm
  */
 public class CAStar extends ConstrainedSolver {
-    
-    private Reservation reservation;
-    private HashMap<Keys, Object> params;
+
+    private Supplier<ConstrainedSolver> lowLevel;
+    private String name; // built from the low-level solver on first use
     private List<Path> paths;
     private ProblemInstance problemInstance;
 
+    public CAStar() {
+        this(SingleAgentAStar::new);
+        name = "Cooperative A*";
+    }
+
+    /**
+     * Constructor that creates a Cooperative A* solver that plans each
+     * agent with a single-agent solver created by the given factory
+     * @param lowLevel creates the single-agent solver
+     */
+    public CAStar(Supplier<ConstrainedSolver> lowLevel) {
+        this.lowLevel = lowLevel;
+    }
+
     @Override
     public boolean subSolve(ProblemInstance problem) {
         this.problemInstance = problem;
-        init();
+        paths = new ArrayList<>();
         List<Agent> agents = problem.getAgents();
-        SingleAgentAStar solver = new SingleAgentAStar(params);
+        // the low-level solver checks the paths reserved in the level of this solve
+        ConstrainedSolver solver = lowLevel.get();
+        solver.setReservation(getReservation());
         for (Agent a : agents) {
             Agent singleton = new Agent(a.position(), a.goal(), 0);
-            ProblemInstance agentProblem = new ProblemInstance(problemInstance.getGraph(), Collections.singletonList(singleton));
-            if (!solver.solve(agentProblem)) return false;
+            ProblemInstance agentProblem = new ProblemInstance(problemInstance.getGraph(), Collections.singletonList(singleton),
+                    problemInstance.getTrueDistanceHeuristic());
+            if (!solveLowLevel(solver, agentProblem)) return false;
             Path solverPath = solver.getPath();
-            reservation.reservePath(solverPath);
+            getReservation().reservePath(solverPath);
             paths.add(solverPath);
-            for (State s : solverPath) {
-                s.printIndices();
-            }
         }
         return true;
     }
 
-    private void init() {
-        params = new HashMap<>();
-        reservation = new Reservation();
-        paths = new ArrayList<>();
-        params.put(Keys.RESERVATIONS, reservation);
-    }
-
     @Override
     public Path getPath() {
         return Util.mergePaths(paths, problemInstance);
     }
 
     public String toString() {
-    	return "Cooperative A*";
+        if (name == null) name = "Cooperative A* + " + lowLevel.get();
+    	return name;
 	}
 
 }
@@ -1,8 +1,8 @@
 package solvers.cbs;
 
 import constants.CostFunction;
-import solvers.ConflictAvoidanceTable;
 import solvers.ConstrainedSolver;
+import solvers.SearchStatistics;
 import solvers.Solver;
 import solvers.astar.GenericAStar;
 import solvers.astar.MultiAgentAStar;
@@ -10,13 +10,15 @@ import solvers.astar.SingleAgentAStar;
 import solvers.astar.State;
 import solvers.states.CBSNode;
 import utilities.Agent;
+import utilities.IOpenList;
 import utilities.Path;
 import utilities.ProblemInstance;
+import utilities.StateOpenList;
 import utilities.Util;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.PriorityQueue;
+import java.util.function.Supplier;
 
 /*
 TODO: Change solvers so that they keep track of group assignments
@@ -41,15 +43,28 @@ solver:
 
 public class ConflictBasedSearch extends ConstrainedSolver {
 
-    private List<GenericAStar> solvers;
+    private List<ConstrainedSolver> solvers;
+    private Supplier<ConstrainedSolver> lowLevel;
+    private String name; // built from the low-level solver on first use
     private State goal;
-    private PriorityQueue<State> openList;
+    private IOpenList openList;
     private ProblemInstance problemInstance;
 
 
     public ConflictBasedSearch() {
+        this(SingleAgentAStar::new);
+        name = "CBS";
+    }
+
+    /**
+     * Constructor that creates a CBS solver whose per-agent low-level
+     * searches are created by the given factory
+     * @param lowLevel creates a single-agent solver for each agent
+     */
+    public ConflictBasedSearch(Supplier<ConstrainedSolver> lowLevel) {
+        this.lowLevel = lowLevel;
         solvers = new ArrayList<>();
-        openList = new PriorityQueue<>();
+        openList = new StateOpenList();
     }
 
     @Override
@@ -57,11 +72,15 @@ public class ConflictBasedSearch extends ConstrainedSolver {
         init(problemInstance);
 
         CBSNode root = new CBSNode(problemInstance, solvers);
-        getInitialConflict(root);
+        SearchStatistics statistics = getStatistics();
+        statistics.countConstraintTreeNode();
+        for (ConstrainedSolver solver : solvers) addLowLevelStatistics(solver);
+        if (!root.isConsistent()) return false;
 
         State current = root;
         openList.add(current);
         while (!openList.isEmpty()){
+            if (limitReached()) return false;
             current = openList.remove();
 
             if (current.goalTest(problemInstance)) {
@@ -76,6 +95,8 @@ public class ConflictBasedSearch extends ConstrainedSolver {
                 CBSNode childNode = (CBSNode) child;
                 int constrainedAgent = childNode.constraint().constrainedAgent();
                 childNode.replan(solvers.get(constrainedAgent), problemInstance);
+                statistics.countConstraintTreeNode();
+                addLowLevelStatistics(solvers.get(constrainedAgent));
                 //System.out.println("child replanned.");
                 if (childNode.isConsistent()) {
                     openList.add(childNode);
@@ -91,18 +112,27 @@ public class ConflictBasedSearch extends ConstrainedSolver {
         solvers.clear();
         openList.clear();
         for (Agent agent : problemInstance.getAgents()) {
-            solvers.add(new SingleAgentAStar());
+            ConstrainedSolver solver = lowLevel.get();
+            shareLimits(solver);
+            // the low-level solvers share the table of this solve, whose level constraint tree
+            // nodes replace with their own tables, and each has a reservation level for its constraints
+            solver.setConflictAvoidanceTable(getConflictAvoidanceTable());
+            solver.getReservation().addLevel();
+            solvers.add(solver);
         }
     }
 
-    private void getInitialConflict(CBSNode root) {
-        ConflictAvoidanceTable cat = new ConflictAvoidanceTable();
-        int group = 0;
-        for (Path rootPath : root.solutions()) {
-            cat.addPath(rootPath);
-            group++;
-        }
-        root.setConflict(cat.getEarliestConflict());
+    private void addLowLevelStatistics(ConstrainedSolver solver) {
+        getStatistics().countLowLevelCall();
+        getStatistics().add(solver.getStatistics());
+    }
+
+    /**
+     * Replace the open list of constraint tree nodes, e.g. with a BucketOpenList
+     * @param openList the (empty) open list to use from the next solve on
+     */
+    public void setOpenList(IOpenList openList) {
+        this.openList = openList;
     }
 
     @Override
@@ -112,6 +142,7 @@ public class ConflictBasedSearch extends ConstrainedSolver {
     }
 
     public String toString() {
-        return "CBS";
+        if (name == null) name = "CBS + " + lowLevel.get();
+        return name;
     }
 }
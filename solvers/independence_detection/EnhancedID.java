@@ -43,7 +43,7 @@ public class EnhancedID extends IndependenceDetection {
             boolean finished = false;
             double costLimit = paths().get(indexOfConflict).cost();
             solver().getReservation().reservePath(paths().get(index));
-            if (solver().solve(conflict)) {
+            if (solveGroup(conflict)) {
                 Path newPath = solver().getPath();
                 if (newPath.cost() == costLimit) {
                     paths().set(indexOfConflict, newPath);
@@ -60,7 +60,7 @@ public class EnhancedID extends IndependenceDetection {
                 //System.out.println("first pass failed");
                 solver().getReservation().reservePath(paths().get(indexOfConflict));
                 costLimit = paths().get(index).cost();
-                if (solver().solve(current)) {
+                if (solveGroup(current)) {
                     Path newPath = solver().getPath();
                     if (newPath.cost() == costLimit) {
                         paths().set(index, newPath);
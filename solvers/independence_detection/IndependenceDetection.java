@@ -19,9 +19,22 @@ public class IndependenceDetection extends ConstrainedSolver {
     private List<ProblemInstance> problemList;
     private List<Path> pathList;
     private ConstrainedSolver solver;
+    private ConstrainedSolver singletonSolver;
 
     public IndependenceDetection(ConstrainedSolver solver) {
+        this(solver, solver);
+    }
+
+    /**
+     * Constructor that creates an ID solver that plans groups of a single
+     * agent with a single-agent solver, such as SIPP, and merged groups with
+     * a multi-agent solver
+     * @param solver the solver of merged groups
+     * @param singletonSolver the solver of groups of one agent
+     */
+    public IndependenceDetection(ConstrainedSolver solver, ConstrainedSolver singletonSolver) {
         this.solver = solver;
+        this.singletonSolver = singletonSolver;
     }
 
     @Override
@@ -39,6 +52,7 @@ public class IndependenceDetection extends ConstrainedSolver {
         int index = 0;
         //System.out.println("problems at start: " + problemList.size());
         while (index < pathList.size()) {
+            if (limitReached()) return false;
             //System.out.println("checking path " + index + " for conflicts...");
             Conflict conflict = Util.conflict(index, 0, this.pathList);
             if (conflict != null) {
@@ -60,7 +74,8 @@ public class IndependenceDetection extends ConstrainedSolver {
     protected boolean resolveConflict(int index, int indexOfConflict) {
         ProblemInstance joined = handleProblemMerge(index, indexOfConflict);
 
-        boolean solved = solver.solve(joined);
+        getStatistics().countMerge();
+        boolean solved = solveGroup(joined);
 
         if (!solved) return false;
         //System.out.println("conflict resolved");
@@ -91,13 +106,28 @@ public class IndependenceDetection extends ConstrainedSolver {
             problemList.add(newProblem);
         }
         for (ProblemInstance problem : problemList) {
-            boolean solved = solver.solve(problem);
+            if (limitReached()) return false;
+            boolean solved = solveGroup(problem);
             if (!solved) return false;
-            pathList.add(solver.getPath());
+            pathList.add(groupSolver(problem).getPath());
         }
         return true;
     }
 
+    /**
+     * Solves a group with the low-level solver, adding its
+     * statistics to those of this solver
+     * @param problem the problem of the group
+     * @return true if the group was solved, false otherwise
+     */
+    protected boolean solveGroup(ProblemInstance problem) {
+        return solveLowLevel(groupSolver(problem), problem);
+    }
+
+    private ConstrainedSolver groupSolver(ProblemInstance problem) {
+        return problem.getAgents().size() == 1 ? singletonSolver : solver;
+    }
+
     protected void init() {
         problemList = new ArrayList<>();
         pathList = new ArrayList<>();
@@ -120,7 +150,7 @@ public class IndependenceDetection extends ConstrainedSolver {
     }
 
     public String toString() {
-        return "ID + " + solver;
+        return singletonSolver == solver ? "ID + " + solver : "ID + " + solver + " + " + singletonSolver;
     }
 
 }
@@ -19,47 +19,69 @@ public class CBSNode extends State {
     private List<Path> solutions;
     private boolean consistent;
     private Map<Coordinate, Coordinate> constraints;
+    private ConflictAvoidanceTable table; // the paths of solutions, until the node is expanded
 
     private static final ProblemInstance IRRELEVANT = null;
 
     public CBSNode(State backPointer, CBSConstraint constraint) {
         super(backPointer);
         this.solutions = new ArrayList<Path>(((CBSNode) predecessor()).solutions);
+        this.table = ((CBSNode) predecessor()).table.deepCopy();
         this.constraint = constraint;
     }
 
-    public CBSNode(ProblemInstance problemInstance, List<GenericAStar> solvers) {
+    public CBSNode(ProblemInstance problemInstance, List<ConstrainedSolver> solvers) {
         super(null);
         this.solutions = new ArrayList<>();
         for (int agent = 0; agent < problemInstance.getAgents().size(); agent++) {
             solveSingleton(solvers.get(agent), problemInstance, agent);
-            solvers.get(agent).addParam(Keys.PREPROCESS, false);
-            Path newPath = consistent ? solvers.get(agent).getPath() : null;
-            solutions.add(newPath);
+            if (solvers.get(agent) instanceof GenericAStar)
+                ((GenericAStar) solvers.get(agent)).addParam(Keys.PREPROCESS, false);
+            if (!consistent) return; // an agent has no path within the budget
+            solutions.add(solvers.get(agent).getPath());
         }
         calculateCost(IRRELEVANT);
+
+        table = new ConflictAvoidanceTable();
+        for (int agent = 0; agent < solutions.size(); agent++) {
+            table.setPath(agent, solutions.get(agent));
+        }
+        conflict = table.getEarliestConflict();
     }
 
     @Override
     public List<State> expand(ProblemInstance problem) {
         List<State> neighbors = new ArrayList<>();
 
-        Coordinate conflictCoordinate1 = conflictCoordinate(conflict.getGroup1());
-        Coordinate conflictPrev1 = conflictPrev(conflict.getGroup1());
+        // the groups of a conflict are the goals of the agents
+        int agent1 = agentWithGoal(problem, conflict.getGroup1());
+        int agent2 = agentWithGoal(problem, conflict.getGroup2());
+
+        Coordinate conflictCoordinate1 = conflictCoordinate(agent1);
+        Coordinate conflictPrev1 = conflictPrev(agent1);
 
-        Coordinate conflictCoordinate2 = conflictCoordinate(conflict.getGroup2());
-        Coordinate conflictPrev2 = conflictPrev(conflict.getGroup2());
+        Coordinate conflictCoordinate2 = conflictCoordinate(agent2);
+        Coordinate conflictPrev2 = conflictPrev(agent2);
 
-        CBSConstraint constraint1 = new CBSConstraint(conflict.getGroup1(), conflictCoordinate1, conflictPrev1);
-        CBSConstraint constraint2 = new CBSConstraint(conflict.getGroup2(), conflictCoordinate2, conflictPrev2);
+        CBSConstraint constraint1 = new CBSConstraint(agent1, conflictCoordinate1, conflictPrev1);
+        CBSConstraint constraint2 = new CBSConstraint(agent2, conflictCoordinate2, conflictPrev2);
 
         //System.out.println(constraint1 + " " + constraint2);
         neighbors.add(new CBSNode(this, constraint1));
         neighbors.add(new CBSNode(this, constraint2));
+        table = null; // the children have their own copies
 
         return neighbors;
     }
 
+    private int agentWithGoal(ProblemInstance problem, int goal) {
+        List<Agent> agents = problem.getAgents();
+        for (int agent = 0; agent < agents.size(); agent++) {
+            if (agents.get(agent).goal() == goal) return agent;
+        }
+        throw new IllegalStateException("No agent has goal " + goal);
+    }
+
     private Coordinate conflictCoordinate(int index) {
         Path path = solutions.get(index);
         int adjustedTime = Math.min(path.size() - 1, conflict.getTimeStep());
@@ -80,10 +102,9 @@ public class CBSNode extends State {
         throw new NoSuchMethodError("CAT violations not recorded in CBSNode");
     }
 
-    public void replan(GenericAStar solver, ProblemInstance problemInstance) {
+    public void replan(ConstrainedSolver solver, ProblemInstance problemInstance) {
         populateConstraints();
         solver.getReservation().clear();
-        solver.getConflictAvoidanceTable().clear();
 
         for (Coordinate coordinate : constraints.keySet()) {
             solver.getReservation().reserveCoordinate(
@@ -91,12 +112,9 @@ public class CBSNode extends State {
             );
         }
 
-        for (int group = 0; group < solutions.size(); group++) {
-            if (group != constraint.constrainedAgent()) {
-                Path otherPath = solutions.get(group);
-                solver.getConflictAvoidanceTable().addPath(otherPath);
-            }
-        }
+        // the table of the node holds the paths of its parent, the old path of the
+        // constrained agent included, which the agent does not conflict with
+        solver.getConflictAvoidanceTable().replaceLevel(table);
         //System.out.println(solver.getReservation().reservedCoordinates);
         //System.out.println("constraints populated.");
         solveSingleton(solver, problemInstance, constraint.constrainedAgent());
@@ -107,8 +125,11 @@ public class CBSNode extends State {
         //System.out.println("cost computed as: " + gValue);
         constraints.clear();
 
+        // the first conflict of the new path, else the earliest between the other paths
         Path newPath = solutions.get(constraint.constrainedAgent());
-        conflict = solver.getConflictAvoidanceTable().simulatePath(newPath, constraint.constrainedAgent());
+        table.setPath(constraint.constrainedAgent(), null);
+        conflict = table.simulatePath(newPath, constraint.constrainedAgent());
+        table.setPath(constraint.constrainedAgent(), newPath);
         //System.out.println(conflict);
     }
 
@@ -139,6 +160,14 @@ public class CBSNode extends State {
         return solutions;
     }
 
+    /**
+     * Returns the table of the paths of the solutions
+     * @return the table, null once the node has been expanded
+     */
+    public ConflictAvoidanceTable conflictAvoidanceTable() {
+        return table;
+    }
+
 
     public void setConflict(Conflict conflict) {
         this.conflict = conflict;
@@ -197,7 +226,7 @@ public class CBSNode extends State {
         Agent singleton = problemInstance.getAgents().get(agent);
         Agent problemAgent = new Agent(singleton.position(), singleton.goal(), 0);
         ProblemInstance singletonProblem = new ProblemInstance(problemInstance.getGraph(),
-                Collections.singletonList(problemAgent));
+                Collections.singletonList(problemAgent), problemInstance.getTrueDistanceHeuristic());
         consistent = solver.solve(singletonProblem);
     }
 }
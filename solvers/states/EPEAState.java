@@ -0,0 +1,163 @@
+package solvers.states;
+
+import constants.CostFunction;
+import solvers.astar.OperatorTable;
+import solvers.astar.PairwiseHeuristic;
+import solvers.astar.State;
+import solvers.astar.TDHeuristic;
+import utilities.Graph;
+import utilities.ProblemInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Multi-agent state for Enhanced Partial Expansion A*. Each expansion
+ * generates only the children whose f-value exceeds the state's own by the
+ * requested amount, and works out the next larger amount any child could
+ * have, so the search can put the state back in the open list for it.
+ * The state is ordered in the open list by its f-value plus the requested
+ * amount. Only sum of costs is supported.
+ */
+public class EPEAState extends MultiAgentState {
+
+    private static final double EPSILON = 1e-9;
+
+    private double agentsHValue;   // h-value before the requested amount is added
+    private boolean expanded;
+    private double requestedDelta; // change in f of the children to generate next
+    private double nextDelta;      // change in f of the children after those
+
+    /**
+     * Constructor that creates a state generated from a parent state
+     * @param backPointer the parent state
+     * @param singleStates the list of single agent states
+     * @param problem the problem instance
+     */
+    public EPEAState(State backPointer, List<SingleAgentState> singleStates, ProblemInstance problem) {
+        super(backPointer, CostFunction.SUM_OF_COSTS, singleStates, problem);
+    }
+
+    /**
+     * Constructor that creates a root state from the specified problem instance
+     * @param problemInstance the problem instance
+     */
+    public EPEAState(ProblemInstance problemInstance) {
+        super(CostFunction.SUM_OF_COSTS, problemInstance);
+    }
+
+    @Override
+    public void setHeuristic(TDHeuristic heuristic) {
+        super.setHeuristic(heuristic);
+        agentsHValue = hValue;
+    }
+
+    /**
+     * The operator tables only know the true distances of the agents,
+     * so the pairwise heuristic is not used
+     * @param pairwise the pairwise heuristic
+     */
+    @Override
+    public void addPairwiseHeuristic(PairwiseHeuristic pairwise) {
+    }
+
+    /**
+     * Generates the children whose f-value exceeds this state's by the
+     * requested amount, the smallest amount on the first expansion
+     * @param problem the problem instance
+     * @return the children with the requested f-value
+     */
+    @Override
+    public List<State> expand(ProblemInstance problem) {
+        Graph graph = problem.getGraph();
+        TDHeuristic heuristic = problem.getTrueDistanceHeuristic();
+        List<SingleAgentState> singles = getSingleAgentStates();
+        int numAgents = singles.size();
+        int[] positions = new int[numAgents];
+        int[][] moves = new int[numAgents][];
+        double[][] deltas = new double[numAgents][];
+        double[] minRest = new double[numAgents + 1]; // smallest change in f of the agents from i on
+        double[] maxRest = new double[numAgents + 1]; // largest change in f of the agents from i on
+        for (int i = 0; i < numAgents; i++) {
+            SingleAgentState single = singles.get(i);
+            positions[i] = single.coordinate().getNode().getIndexInGraph();
+            OperatorTable table = OperatorTable.forGoal(graph, heuristic, single.getAgentGoal());
+            moves[i] = table.moves(positions[i]);
+            deltas[i] = table.deltas(positions[i]);
+        }
+        for (int i = numAgents - 1; i >= 0; i--) {
+            minRest[i] = minRest[i + 1] + deltas[i][0];
+            maxRest[i] = maxRest[i + 1] + deltas[i][deltas[i].length - 1];
+        }
+
+        if (!expanded) requestedDelta = minRest[0];
+        expanded = true;
+        nextDelta = Double.POSITIVE_INFINITY;
+        List<State> children = new ArrayList<>();
+        if (numAgents > 0)
+            generate(0, 0, new int[numAgents], new int[numAgents], positions, moves, deltas, minRest, maxRest, children, problem);
+        return children;
+    }
+
+    // chooses the move of agent i, given the moves of the agents before it
+    private void generate(int i, double partial, int[] chosen, int[] targets, int[] positions, int[][] moves,
+                          double[][] deltas, double[] minRest, double[] maxRest, List<State> children,
+                          ProblemInstance problem) {
+        Graph graph = problem.getGraph();
+        for (int m = 0; m < moves[i].length; m++) {
+            double sum = partial + deltas[i][m];
+            if (sum + minRest[i + 1] > requestedDelta + EPSILON) {
+                // later moves only raise f further
+                nextDelta = Math.min(nextDelta, sum + minRest[i + 1]);
+                return;
+            }
+            if (sum + maxRest[i + 1] < requestedDelta - EPSILON) continue; // generated by an earlier expansion
+            int target = moves[i][m] == OperatorTable.WAIT ? positions[i] : graph.getEdgeTarget(moves[i][m]);
+            if (collides(i, target, targets, positions)) continue;
+            chosen[i] = moves[i][m];
+            targets[i] = target;
+            if (i + 1 < chosen.length) {
+                generate(i + 1, sum, chosen, targets, positions, moves, deltas, minRest, maxRest, children, problem);
+            } else {
+                children.add(child(targets, problem));
+            }
+        }
+    }
+
+    // whether agent i moving to target meets or swaps with an agent before it
+    private static boolean collides(int i, int target, int[] targets, int[] positions) {
+        for (int j = 0; j < i; j++) {
+            if (targets[j] == target) return true;
+            if (target == positions[j] && targets[j] == positions[i]) return true;
+        }
+        return false;
+    }
+
+    private EPEAState child(int[] targets, ProblemInstance problem) {
+        List<SingleAgentState> singles = getSingleAgentStates();
+        List<SingleAgentState> childSingles = new ArrayList<>(singles.size());
+        for (int i = 0; i < singles.size(); i++) {
+            SingleAgentState single = singles.get(i);
+            childSingles.add(new SingleAgentState(single.getAgentId(),
+                    problem.getGraph().getNodes().get(targets[i]), single, problem));
+        }
+        return new EPEAState(this, childSingles, problem);
+    }
+
+    /**
+     * Returns whether some children have not been generated yet
+     * @return true if the state must go back in the open list
+     */
+    public boolean hasMoreChildren() {
+        return nextDelta != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Requests the children with the next larger f-value, raising the
+     * state's f-value to theirs
+     */
+    public void requestNextChildren() {
+        requestedDelta = nextDelta;
+        hValue = agentsHValue + requestedDelta;
+    }
+}
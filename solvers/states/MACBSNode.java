@@ -60,12 +60,10 @@ public class MACBSNode extends State {
 
     private void populateCAT() {
         int index = constraint != null ? constraint.constrainedAgent() : -1;
-        highLevel.getConflictAvoidanceTable().clear();
+        // only the paths that differ from those of the last node populated are updated
         for (int i = 0; i < metaAgents.size(); i++) {
-            if (i != index) {
-                Path path = solutions.get(i);
-                highLevel.getConflictAvoidanceTable().addPath(path);
-            }
+            Path path = i != index ? solutions.get(i) : null;
+            highLevel.getConflictAvoidanceTable().setPath(i, path);
         }
     }
 
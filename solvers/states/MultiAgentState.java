@@ -1,14 +1,17 @@
 package solvers.states;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import constants.CostFunction;
 import solvers.ConflictAvoidanceTable;
 import solvers.MultiLevelCAT;
+import solvers.astar.PairwiseHeuristic;
 import solvers.astar.State;
 import solvers.astar.TDHeuristic;
 import utilities.Agent;
@@ -22,6 +25,9 @@ public class MultiAgentState extends State {
 
     private CostFunction costFunction;
     private List<SingleAgentState> singleStates;
+    private boolean heuristicSet;
+    private double stepsLeft; // total moves the agents still need, for makespan
+    private double agentsHValue; // h-value from the agents alone, reused by successors
 
     /**
      * Constructor that creates a multi-agent state with the specified back pointer,
@@ -57,13 +63,24 @@ public class MultiAgentState extends State {
     @Override
     public List<State> expand(ProblemInstance problem) {
         List<State> neighbors = new ArrayList<>();
-        List<List<SingleAgentState>> lists = generateNeighbors(problem);
-        for (List<SingleAgentState> list : lists) {
-            neighbors.add(new MultiAgentState(this, costFunction, list, problem));
-        }
+        Iterator<MultiAgentState> successors = successors(problem);
+        while (successors.hasNext()) neighbors.add(successors.next());
         return neighbors;
     }
 
+    /**
+     * Returns the successors of this state one at a time. Joint moves are
+     * enumerated like an odometer, the first agent's move changing fastest,
+     * and joint moves where two agents end on the same node or swap nodes
+     * are skipped without being allocated. The iterator must be used up
+     * before the thread expands another state.
+     * @param problem the problem instance
+     * @return an iterator over the successors of this state
+     */
+    public Iterator<MultiAgentState> successors(ProblemInstance problem) {
+        return new JointMoves(problem);
+    }
+
     public void updateCATViolations(MultiLevelCAT conflictAvoidanceTable) {
         this.conflictViolations = 0;
         for (SingleAgentState singleAgentState : getSingleAgentStates()) {
@@ -72,53 +89,6 @@ public class MultiAgentState extends State {
         }
     }
 
-    private List<List<SingleAgentState>> generateNeighbors(ProblemInstance problem) {
-        int branchFactor = 0;
-        if (!singleStates.isEmpty()) branchFactor = problem.getGraph().getConnectednessNumber() + 1;
-        int initialCapacity = (int) Math.pow(branchFactor, singleStates.size());
-        List<List<SingleAgentState>> prelim = new ArrayList<>(initialCapacity);
-        for (SingleAgentState sa : singleStates) {
-            process(sa, problem, prelim);
-        }
-        filter(prelim, singleStates);
-        return prelim;
-    }
-
-    private static void process(SingleAgentState sa, ProblemInstance problem, List<List<SingleAgentState>> processed) {
-        int limit = processed.size(); // processed.size() will change during this method
-        List<State> exp = sa.expand(problem); // get the list of states to add
-        if (processed.size() > 0) {
-            for (List<SingleAgentState> ls : processed) ls.add((SingleAgentState) exp.get(0)); // add the first state to all of the processed lists
-            for (int i = 1; i < exp.size(); i++) {
-                SingleAgentState current = (SingleAgentState) exp.get(i); // cast next state
-                for (int j = 0; j < limit; j++) {
-                    List<SingleAgentState> clone = new ArrayList<>(processed.get(j)); // make a copy of each list already processed
-                    clone.set(clone.size() - 1, current); // set the last state to the current one
-                    processed.add(clone); // add this one to the end
-                }
-            }
-        } else {
-            for (State s : exp) {
-                List<SingleAgentState> newList = new ArrayList<>();
-                newList.add((SingleAgentState) s);
-                processed.add(newList);
-            }
-        }
-    }
-
-    protected void filter(List<List<SingleAgentState>> list, List<SingleAgentState> states) {
-        Iterator<List<SingleAgentState>> lit = list.iterator();
-        List<SingleAgentState> current;
-        Set<SingleAgentState> duplicates;
-        while (lit.hasNext()) {
-            current = lit.next();
-            duplicates = new HashSet<>(current);
-            boolean hasDuplicates = duplicates.size() != current.size();
-            if (hasDuplicates || containsTransposition(current, states)) lit.remove();
-        }
-    }
-
-
     protected static boolean containsTransposition(List<SingleAgentState> singleAgentStates, List<SingleAgentState> baseList) {
         Set<SingleAgentState> intersection = new HashSet<>(baseList);
         intersection.retainAll(singleAgentStates);
@@ -145,12 +115,91 @@ public class MultiAgentState extends State {
         return singleStates.get(0).coordinate().getTimeStep();
     }
 
+    /**
+     * Sets the h-value for the state's cost function: the sum of the agents'
+     * true distances for sum of costs, and the largest number of moves any
+     * agent still needs for makespan. Single-agent states carried over
+     * unchanged from the state this one was generated from keep their h-value
+     * instead of being looked up again.
+     * @param heuristic the heuristic
+     */
     @Override
     public void setHeuristic(TDHeuristic heuristic) {
-        for (SingleAgentState state : singleStates) {
-            state.setHeuristic(heuristic);
-            hValue += state.hValue();
+        MultiAgentState parent = heuristicParent();
+        if (costFunction == CostFunction.MAKESPAN) {
+            hValue = 0;
+            stepsLeft = 0;
+            for (int i = 0; i < singleStates.size(); i++) {
+                SingleAgentState state = singleStates.get(i);
+                if (parent == null || state != parent.singleStates.get(i)) state.setStepHeuristic(heuristic);
+                hValue = Math.max(hValue, state.hValue());
+                stepsLeft += state.hValue();
+            }
+        } else {
+            hValue = parent == null ? 0 : parent.agentsHValue;
+            for (int i = 0; i < singleStates.size(); i++) {
+                SingleAgentState state = singleStates.get(i);
+                if (parent != null && state == parent.singleStates.get(i)) continue;
+                state.setHeuristic(heuristic);
+                hValue += state.hValue() - (parent == null ? 0 : parent.singleStates.get(i).hValue());
+            }
+        }
+        agentsHValue = hValue;
+        heuristicSet = true;
+    }
+
+    /**
+     * Raises the h-value of a sum of costs state by the extra cost of its
+     * interacting pairs of agents. Must be called after setHeuristic().
+     * The agents of an intermediate state of operator decomposition are not
+     * all at the same time step, so it inherits the bound of the state it
+     * was generated from instead, less the cost of the move in between.
+     * @param pairwise the pairwise heuristic
+     */
+    public void addPairwiseHeuristic(PairwiseHeuristic pairwise) {
+        if (costFunction != CostFunction.SUM_OF_COSTS) return;
+        if (!intermediateState()) {
+            hValue = agentsHValue + pairwise.bound(this);
+            return;
         }
+        MultiAgentState parent = heuristicParent();
+        if (parent != null) hValue = Math.max(hValue, parent.hValue - (gValue - parent.gValue));
+    }
+
+    /**
+     * Returns whether only some of the agents have moved to the next time step
+     * @return true for the intermediate states of operator decomposition
+     */
+    public boolean intermediateState() {
+        return false;
+    }
+
+    /**
+     * Under makespan many states share an f-value, so ties go to the
+     * state whose agents need the fewest moves in total
+     * @return the tie-breaking value of the state
+     */
+    @Override
+    public double tieBreaker() {
+        return costFunction == CostFunction.MAKESPAN ? stepsLeft : hValue;
+    }
+
+    // the state this one was generated from, if its h-value can be reused
+    private MultiAgentState heuristicParent() {
+        State parent = generatedFrom();
+        if (!(parent instanceof MultiAgentState)) return null;
+        MultiAgentState multiParent = (MultiAgentState) parent;
+        if (!multiParent.heuristicSet || multiParent.costFunction != costFunction
+                || multiParent.singleStates.size() != singleStates.size()) return null;
+        return multiParent;
+    }
+
+    /**
+     * Returns the state this one was generated from by expand()
+     * @return the state this one was generated from, or null for the root
+     */
+    protected State generatedFrom() {
+        return predecessor();
     }
 
     @Override
@@ -219,4 +268,128 @@ public class MultiAgentState extends State {
         return costFunction;
     }
 
+    /**
+     * Iterator over the joint moves of the agents that neither collide
+     * on a node nor swap nodes
+     */
+    private class JointMoves implements Iterator<MultiAgentState> {
+
+        private final ProblemInstance problem;
+        private final List<List<State>> moves; // moves of each agent, waiting first
+        private final int[][] targets;         // node each move leads to
+        private final int[] positions;         // node of each agent in this state
+        private final int[] digits;            // move chosen for each agent
+        private final NodeMarks marks;
+        private final int positionStamp;
+        private boolean hasNext;
+
+        JointMoves(ProblemInstance problem) {
+            this.problem = problem;
+            int numAgents = singleStates.size();
+            moves = new ArrayList<>(numAgents);
+            targets = new int[numAgents][];
+            positions = new int[numAgents];
+            digits = new int[numAgents];
+            marks = NodeMarks.forGraph(problem.getGraph().getSize());
+
+            // remember which agent is on each node, for swaps
+            positionStamp = marks.nextPositionStamp();
+            for (int i = 0; i < numAgents; i++) {
+                SingleAgentState state = singleStates.get(i);
+                List<State> agentMoves = state.expand(problem);
+                moves.add(agentMoves);
+                targets[i] = new int[agentMoves.size()];
+                for (int move = 0; move < agentMoves.size(); move++)
+                    targets[i][move] = ((SingleAgentState) agentMoves.get(move)).coordinate().getNode().getIndexInGraph();
+                positions[i] = state.coordinate().getNode().getIndexInGraph();
+                marks.positionMarks[positions[i]] = positionStamp;
+                marks.agents[positions[i]] = i;
+            }
+            hasNext = numAgents > 0 && (valid() || advance());
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public MultiAgentState next() {
+            if (!hasNext) throw new NoSuchElementException();
+            List<SingleAgentState> states = new ArrayList<>(digits.length);
+            for (int i = 0; i < digits.length; i++) states.add((SingleAgentState) moves.get(i).get(digits[i]));
+            hasNext = advance();
+            return new MultiAgentState(MultiAgentState.this, costFunction, states, problem);
+        }
+
+        // moves to the next valid joint move, returns false when there is none
+        private boolean advance() {
+            while (true) {
+                int agent = 0;
+                while (agent < digits.length && ++digits[agent] == targets[agent].length) digits[agent++] = 0;
+                if (agent == digits.length) return false;
+                if (valid()) return true;
+            }
+        }
+
+        private boolean valid() {
+            int stamp = marks.nextTargetStamp();
+            for (int i = 0; i < digits.length; i++) {
+                int target = targets[i][digits[i]];
+                if (marks.targetMarks[target] == stamp) return false;
+                marks.targetMarks[target] = stamp;
+                // moving onto the node of another agent that moves onto ours
+                if (target != positions[i] && marks.positionMarks[target] == positionStamp) {
+                    int other = marks.agents[target];
+                    if (targets[other][digits[other]] == positions[i]) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Scratch arrays over the nodes of a graph, reused by every expansion on
+     * a thread. A node is marked when its entry equals the current stamp, so
+     * the arrays never need to be cleared.
+     */
+    private static final class NodeMarks {
+
+        private static final ThreadLocal<NodeMarks> perThread = ThreadLocal.withInitial(NodeMarks::new);
+
+        private int[] targetMarks = new int[0];
+        private int[] positionMarks = new int[0];
+        private int[] agents = new int[0];
+        private int targetStamp;
+        private int positionStamp;
+
+        static NodeMarks forGraph(int numNodes) {
+            NodeMarks marks = perThread.get();
+            if (marks.targetMarks.length < numNodes) {
+                marks.targetMarks = new int[numNodes];
+                marks.positionMarks = new int[numNodes];
+                marks.agents = new int[numNodes];
+                marks.targetStamp = 0;
+                marks.positionStamp = 0;
+            }
+            return marks;
+        }
+
+        int nextTargetStamp() {
+            if (targetStamp == Integer.MAX_VALUE) {
+                Arrays.fill(targetMarks, 0);
+                targetStamp = 0;
+            }
+            return ++targetStamp;
+        }
+
+        int nextPositionStamp() {
+            if (positionStamp == Integer.MAX_VALUE) {
+                Arrays.fill(positionMarks, 0);
+                positionStamp = 0;
+            }
+            return ++positionStamp;
+        }
+    }
+
 }
@@ -52,6 +52,20 @@ public class ODState extends MultiAgentState {
         return result;
     }
 
+    /**
+     * Returns the index of the agent that moves next
+     * @return the index of the agent that moves next
+     */
+    public int getMoveNext() {
+        return moveNext;
+    }
+
+    @Override
+    protected State generatedFrom() {
+        return prev;
+    }
+
+    @Override
     public boolean intermediateState() {
         return moveNext != 0;
     }
@@ -4,16 +4,15 @@ package solvers.states;
 import java.util.List;
 import java.util.ArrayList;
 
-import constants.Positions;
 import solvers.ConflictAvoidanceTable;
 import solvers.MultiLevelCAT;
 import solvers.astar.TDHeuristic;
 import utilities.Agent;
 import utilities.Node;
 import utilities.Coordinate;
+import utilities.Graph;
 import utilities.ProblemInstance;
 import constants.Costs;
-import constants.Terrain;
 
 import solvers.astar.State;
 
@@ -82,13 +81,12 @@ public class SingleAgentState extends State {
         List<State> neighbors = new ArrayList<>();
         neighbors.add(waitState(problem));
 
-        Node[] neighborNodes = coord.getNode().getNeighbors();
-        for (int i = 0; i < neighborNodes.length; i++) {
-            Node neighbor = neighborNodes[i];
-            if (neighbor != null && neighbor.isReachable(i)){
-                State nextState = new SingleAgentState(agentId, neighbor, this, problem);
-                neighbors.add(nextState);
-            }
+        Graph graph = problem.getGraph();
+        List<Node> graphNodes = graph.getNodes();
+        int current = coord.getNode().getIndexInGraph();
+        for (int edge = graph.getEdgeStart(current); edge < graph.getEdgeEnd(current); edge++) {
+            Node neighbor = graphNodes.get(graph.getEdgeTarget(edge));
+            neighbors.add(new SingleAgentState(agentId, neighbor, this, problem));
         }
 
         return neighbors;
@@ -117,24 +115,6 @@ public class SingleAgentState extends State {
     }
 
 
-    /**
-     * Helper method to generate costs in the expand() method
-     * @param  position  the place in the neighbors array
-     * @return  the cost of moving to this location from the current state
-     */
-    private double costOfNeighbor(int position) {
-        double cost = Costs.ADJACENT;
-        Node currentNode = coord.getNode();
-        Node nextNode = coord.getNode().getNeighbors()[position];
-        if (this.equals(predecessor())) return Costs.STAY;
-
-        if (Positions.isDiagonal(position)) cost = Costs.DIAGONAL;
-        if (currentNode.getType() == Terrain.WATER || nextNode.getType() == Terrain.WATER) cost *= Costs.WATER_PENALTY;
-        else if (currentNode.getType() == Terrain.TREE || nextNode.getType() == Terrain.TREE) cost *= Costs.TREE_PENALTY;
-
-        return cost;
-    }
-
     @Override
     public int timeStep() {
         return coordinate().getTimeStep();
@@ -172,7 +152,6 @@ public class SingleAgentState extends State {
             return;
         }
 
-        Node[] neighbors = coord.getNode().getNeighbors();
         SingleAgentState pred = (SingleAgentState) predecessor();
 
         gValue = pred.gValue();
@@ -181,14 +160,9 @@ public class SingleAgentState extends State {
             return;
         }
 
-        Node predNode = pred.coord.getNode();
-        for (int i = 0; i < neighbors.length; i++) {
-            if (neighbors[i] != null)
-                if (neighbors[i].equals(predNode)) {
-                    gValue += costOfNeighbor(i);
-                    return;
-                }
-        }
+        Graph graph = problem.getGraph();
+        int edge = graph.findEdge(pred.coord.getNode().getIndexInGraph(), coord.getNode().getIndexInGraph());
+        if (edge != Graph.NO_EDGE) gValue += graph.getEdgeCost(edge);
     }
 
     public int getAgentId() {
@@ -203,6 +177,15 @@ public class SingleAgentState extends State {
         hValue = heuristic.trueDistance(coord.getNode(), agentGoal);
     }
 
+    /**
+     * Set the h-value to the fewest moves left to the goal, for
+     * searches that minimize makespan
+     * @param heuristic the heuristic
+     */
+    public void setStepHeuristic(TDHeuristic heuristic) {
+        hValue = heuristic.stepDistance(coord.getNode().getIndexInGraph(), agentGoal);
+    }
+
 
     @Override
     public boolean goalTest(ProblemInstance problem) {
@@ -0,0 +1,197 @@
+package tests;
+
+import solvers.ConflictAvoidanceTable;
+import solvers.ConstrainedSolver;
+import solvers.MultiLevelCAT;
+import solvers.astar.SpaceTimeAStar;
+import solvers.astar.State;
+import solvers.states.CBSNode;
+import solvers.states.MultiAgentState;
+import solvers.states.SingleAgentState;
+import utilities.*;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.*;
+
+/**
+ * Checks that tables edited in place, copied and shared between constraint
+ * tree nodes hold the same paths as tables built from scratch
+ */
+public class ConflictAvoidanceTableTest {
+
+    private static final int AGENTS = 30;
+    private static final int CHECKED_NODES = 40;
+
+    public static void main(String[] args) throws FileNotFoundException {
+        Graph graph = new Graph(Connected.EIGHT, new ProblemMap(new File("src/maps/arena.map")));
+        ProblemInstance problem;
+        List<ConstrainedSolver> solvers;
+        CBSNode root;
+        do {
+            problem = new ProblemInstance(graph, AGENTS);
+            solvers = lowLevelSolvers(problem);
+            root = new CBSNode(problem, solvers);
+        } while (!root.isConsistent() || root.goalTest(problem));
+
+        testCopy(root.solutions());
+        testRemoveAndAddPath(problem, root.solutions());
+        testCBSNodes(problem, root, solvers);
+    }
+
+    /**
+     * Edits a table and its copy, each after the copy was made
+     */
+    public static void testCopy(List<Path> paths) {
+        ConflictAvoidanceTable table = build(paths);
+        ConflictAvoidanceTable copy = table.deepCopy();
+
+        copy.setPath(0, null);
+        System.out.println("should be true: " + sameTable(table, build(paths), paths));
+        System.out.println("should be true: " + sameTable(copy, build(without(paths, 0)), paths));
+
+        table.setPath(1, null);
+        System.out.println("should be true: " + sameTable(copy, build(without(paths, 0)), paths));
+        System.out.println("should be true: " + sameTable(table, build(without(paths, 1)), paths));
+    }
+
+    /**
+     * Removes a path in the earliest conflict and adds it back
+     */
+    public static void testRemoveAndAddPath(ProblemInstance problem, List<Path> paths) {
+        ConflictAvoidanceTable table = build(paths);
+        Conflict conflict = table.getEarliestConflict();
+        int group = conflict.getGroup1();
+        int agent = agentWithGoal(problem, group);
+        System.out.println("earliest conflict: " + conflict);
+
+        table.removePath(paths.get(agent));
+        Conflict withoutPath = table.getEarliestConflict();
+        Conflict expected = build(without(paths, agent)).getEarliestConflict();
+        System.out.println("without the path of " + group + ": " + withoutPath);
+        System.out.println("should be true: " + (withoutPath == null
+                || (withoutPath.getGroup1() != group && withoutPath.getGroup2() != group)));
+        System.out.println("should be true: " + (withoutPath == null ? expected == null
+                : expected != null && withoutPath.getTimeStep() == expected.getTimeStep()));
+        System.out.println("should be true: " + sameTable(table, build(without(paths, agent)), paths));
+
+        table.addPath(paths.get(agent));
+        Conflict withPath = table.getEarliestConflict();
+        System.out.println("with the path again: " + withPath);
+        System.out.println("should be true: " + (withPath != null && withPath.getTimeStep() == conflict.getTimeStep()));
+        System.out.println("should be true: " + sameTable(table, build(paths), paths));
+    }
+
+    /**
+     * Runs constraint tree nodes as CBS does and compares the table of
+     * every child with a table built from its solutions
+     */
+    public static void testCBSNodes(ProblemInstance problem, CBSNode root, List<ConstrainedSolver> solvers) {
+        Deque<CBSNode> open = new ArrayDeque<>();
+        open.add(root);
+        int checked = 0;
+        int mismatches = 0;
+        while (!open.isEmpty() && checked < CHECKED_NODES) {
+            CBSNode node = open.poll();
+            if (node.goalTest(problem)) continue;
+            List<Path> parentPaths = new ArrayList<>(node.solutions());
+            for (State child : node.expand(problem)) {
+                CBSNode childNode = (CBSNode) child;
+                childNode.replan(solvers.get(childNode.constraint().constrainedAgent()), problem);
+                if (!childNode.isConsistent()) continue;
+                checked++;
+
+                ConflictAvoidanceTable expected = build(childNode.solutions());
+                List<Path> paths = new ArrayList<>(parentPaths);
+                paths.addAll(childNode.solutions());
+                if (!sameTable(childNode.conflictAvoidanceTable(), expected, paths)
+                        || childNode.goalTest(problem) != (expected.getEarliestConflict() == null)) {
+                    mismatches++;
+                }
+                open.add(childNode);
+            }
+        }
+        System.out.println("constraint tree nodes checked: " + checked + ", mismatches: " + mismatches);
+    }
+
+    // the low-level solvers of CBS, which share one table level
+    private static List<ConstrainedSolver> lowLevelSolvers(ProblemInstance problem) {
+        MultiLevelCAT conflictAvoidanceTable = new MultiLevelCAT();
+        conflictAvoidanceTable.addLevel();
+        List<ConstrainedSolver> solvers = new ArrayList<>();
+        for (int agent = 0; agent < problem.getAgents().size(); agent++) {
+            ConstrainedSolver solver = new SpaceTimeAStar();
+            solver.setConflictAvoidanceTable(conflictAvoidanceTable);
+            solver.getReservation().addLevel();
+            solvers.add(solver);
+        }
+        return solvers;
+    }
+
+    private static ConflictAvoidanceTable build(List<Path> paths) {
+        ConflictAvoidanceTable table = new ConflictAvoidanceTable();
+        for (int index = 0; index < paths.size(); index++) table.setPath(index, paths.get(index));
+        return table;
+    }
+
+    private static List<Path> without(List<Path> paths, int index) {
+        List<Path> remaining = new ArrayList<>(paths);
+        remaining.set(index, null);
+        return remaining;
+    }
+
+    private static int agentWithGoal(ProblemInstance problem, int goal) {
+        for (int agent = 0; agent < problem.getAgents().size(); agent++) {
+            if (problem.getAgents().get(agent).goal() == goal) return agent;
+        }
+        throw new IllegalStateException("No agent has goal " + goal);
+    }
+
+    /**
+     * Compares which moves two tables report a violation for, at the nodes
+     * the paths pass and their neighbors, until every path has ended. The
+     * group reported may differ between tables that added the same paths
+     * in a different order, so only whether there is one is compared
+     */
+    private static boolean sameTable(ConflictAvoidanceTable table, ConflictAvoidanceTable other, List<Path> paths) {
+        Set<Node> nodes = new HashSet<>();
+        int horizon = 0;
+        for (Path path : paths) {
+            if (path == null) continue;
+            horizon = Math.max(horizon, path.size());
+            for (State state : path) {
+                for (SingleAgentState singleAgentState : ((MultiAgentState) state).getSingleAgentStates()) {
+                    Node node = singleAgentState.coordinate().getNode();
+                    nodes.add(node);
+                    for (Node neighbor : node.getNeighbors()) if (neighbor != null) nodes.add(neighbor);
+                }
+            }
+        }
+
+        for (int timeStep = 0; timeStep <= horizon + 1; timeStep++) {
+            for (Node node : nodes) {
+                List<Node> previousNodes = new ArrayList<>();
+                previousNodes.add(null);
+                previousNodes.add(node);
+                for (Node neighbor : node.getNeighbors()) if (neighbor != null) previousNodes.add(neighbor);
+                for (Node previous : previousNodes) {
+                    int occupant = table.violation(node, previous, timeStep, ConflictAvoidanceTable.NO_GROUP);
+                    int otherOccupant = other.violation(node, previous, timeStep, ConflictAvoidanceTable.NO_GROUP);
+                    if (!sameViolation(table, other, node, previous, timeStep, ConflictAvoidanceTable.NO_GROUP)
+                            || !sameViolation(table, other, node, previous, timeStep, occupant)
+                            || !sameViolation(table, other, node, previous, timeStep, otherOccupant)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameViolation(ConflictAvoidanceTable table, ConflictAvoidanceTable other,
+                                         Node node, Node previous, int timeStep, int agentGoal) {
+        return (table.violation(node, previous, timeStep, agentGoal) == ConflictAvoidanceTable.NO_CONFLICT)
+                == (other.violation(node, previous, timeStep, agentGoal) == ConflictAvoidanceTable.NO_CONFLICT);
+    }
+
+}
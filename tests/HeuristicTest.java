@@ -1,6 +1,7 @@
 package tests;
 
 import maps.Maps;
+import solvers.astar.GoalDistanceCache;
 import solvers.astar.TDHeuristic;
 import utilities.Agent;
 import utilities.Connected;
@@ -20,6 +21,7 @@ public class HeuristicTest {
 
     public static void main(String[] args) throws FileNotFoundException {
         testTDH();
+        testCache();
     }
 
     public static void testTDH() throws FileNotFoundException {
@@ -31,4 +33,14 @@ public class HeuristicTest {
         System.out.println(Arrays.toString(tdh.getLookupTable()[0]));
     }
 
+    public static void testCache() throws FileNotFoundException {
+        Graph graph = new Graph(Connected.FOUR, new File("MAPF/src/maps/test.map"));
+        List<Agent> agentList = new ArrayList<>();
+        agentList.add(new Agent(0, 4, 0));
+        GoalDistanceCache.clear();
+        new ProblemInstance(graph, agentList);
+        new ProblemInstance(graph, agentList);
+        System.out.println("hits: " + GoalDistanceCache.getHits() + " misses: " + GoalDistanceCache.getMisses());
+    }
+
 }
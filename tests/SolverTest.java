@@ -2,6 +2,7 @@ package tests;
 
 import solvers.ConflictAvoidanceTable;
 import solvers.ConstrainedSolver;
+import solvers.SearchBudget;
 import solvers.astar.*;
 import solvers.cbs.ConflictBasedSearch;
 import solvers.independence_detection.EnhancedID;
@@ -18,6 +19,7 @@ import java.util.*;
 import javax.swing.*;
 
 import constants.CostFunction;
+import constants.SolveStatus;
 import solvers.c_astar.CAStar;
 import solvers.states.MultiAgentState;
 import solvers.states.SingleAgentState;
@@ -71,7 +73,6 @@ public class SolverTest {
         System.out.println(agentMap);
         //solver.getConflictAvoidanceTable().setAgentGroups(agentMap);
         //solver.getConflictAvoidanceTable().setRelevantGroups(Arrays.asList(0, 1, 2));
-        System.out.println(solver.getConflictAvoidanceTable().getGroupOccupantTable());
         //System.out.println(solver.getConflictAvoidanceTable().getAgentGroups().get(4));
         SingleAgentState singleAgentState = new SingleAgentState(2, problemInstance);
         System.out.println(singleAgentState.coordinate());
@@ -88,13 +89,13 @@ public class SolverTest {
         Agent a3 = new Agent(10, 12, 2);
         ProblemInstance problemInstance = new ProblemInstance(graph,30);
         IndependenceDetection solver = new EnhancedID(new OperatorDecomposition());
-        long start = System.currentTimeMillis();
-        if (solver.solve(problemInstance)) {
-            long enhancedTime = System.currentTimeMillis() - start;
-            System.out.printf("Enhanced:\n\tTime: %dms\n\tCost: %5.2f",
-                    enhancedTime, solver.getPath().cost());
+        SolveStatus status = solver.solve(problemInstance, SearchBudget.UNLIMITED.withTimeLimit(60000), null);
+        if (status == SolveStatus.SOLVED) {
+            System.out.printf("Enhanced:\n\tTime: %dms\n\tCost: %5.2f\n\t%s",
+                    solver.getStatistics().getRuntimeNanos() / 1000000, solver.getPath().cost(),
+                    solver.getStatistics());
         } else {
-            System.out.println("Failure");
+            System.out.println("Failure: " + status + "\n\t" + solver.getStatistics());
         }
     }
 
@@ -140,18 +141,16 @@ public class SolverTest {
 
         for (int i = 0; i < 1; i++) {
             ProblemInstance problemInstance = new ProblemInstance(graph, 20);
-            long t = System.currentTimeMillis();
             cbs.solve(problemInstance);
-            System.out.println(System.currentTimeMillis() - t);
+            System.out.println(cbs.getStatistics());
             System.out.println("CBS: " + cbs.getPath().cost());
             //System.out.println(cbs.getPath());
             for (State s : cbs.getPath()) {
                 s.printIndices();
             }
             System.out.println();
-            t = System.currentTimeMillis();
             id.solve(problemInstance);
-            System.out.println(System.currentTimeMillis() - t);
+            System.out.println(id.getStatistics());
             System.out.println("ID: " + id.getPath().cost());
             for (State s : id.getPath()) {
                 s.printIndices();
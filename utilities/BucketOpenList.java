@@ -0,0 +1,201 @@
+package utilities;
+
+import solvers.astar.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Maintains an open list of states in a bucket queue.
+ * The first level is indexed by the scaled f-value of a state, the second
+ * by its number of CAT violations and the third by its scaled tie-breaking
+ * value, so states are removed in the same order as State.compareTo. Buckets
+ * are created when a state first needs them.
+ * Every step cost in constants.Costs (including terrain penalties) is a multiple
+ * of 1 / RESOLUTION, so f-values and tie-breaking values (h-values, or steps
+ * left under makespan) map onto bucket indices exactly.
+ */
+public class BucketOpenList implements IOpenList {
+
+    private static final int RESOLUTION = 4;
+    private static final int INITIAL_BUCKETS = 64;
+
+    private FBucket[] buckets;
+    private int minBucket; // no bucket below this index holds a state
+    private int maxBucket; // highest bucket index ever used since the last clear
+    private int size;
+
+    /**
+     * Creates an empty open list
+     */
+    public BucketOpenList() {
+        buckets = new FBucket[INITIAL_BUCKETS];
+        minBucket = 0;
+        maxBucket = -1;
+        size = 0;
+    }
+
+    @Override
+    public void add(State state) {
+        int fKey = scale(state.gValue() + state.hValue());
+        int tieKey = Math.max(scale(state.tieBreaker()), 0);
+        if (fKey >= buckets.length) growTo(fKey);
+        if (buckets[fKey] == null) buckets[fKey] = new FBucket();
+        buckets[fKey].add(state, state.numCATViolations(), tieKey);
+        if (size == 0 || fKey < minBucket) minBucket = fKey;
+        maxBucket = Math.max(maxBucket, fKey);
+        size++;
+    }
+
+    @Override
+    public State remove() {
+        if (size == 0) throw new NoSuchElementException("Open list is empty");
+        size--;
+        return firstBucket().remove();
+    }
+
+    @Override
+    public State peek() {
+        return size == 0 ? null : firstBucket().peek();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i <= maxBucket; i++) {
+            if (buckets[i] != null) buckets[i].clear();
+        }
+        minBucket = 0;
+        maxBucket = -1;
+        size = 0;
+    }
+
+    // advances the cursor to the lowest non-empty bucket; assumes size > 0
+    private FBucket firstBucket() {
+        while (buckets[minBucket] == null || buckets[minBucket].isEmpty()) minBucket++;
+        return buckets[minBucket];
+    }
+
+    private void growTo(int index) {
+        int newLength = buckets.length;
+        while (newLength <= index) newLength *= 2;
+        FBucket[] grown = new FBucket[newLength];
+        System.arraycopy(buckets, 0, grown, 0, buckets.length);
+        buckets = grown;
+    }
+
+    private static int scale(double value) {
+        return (int) Math.round(value * RESOLUTION);
+    }
+
+    /**
+     * Second level of the queue: all states sharing one f-value,
+     * bucketed by CAT violations and then by tie-breaking value
+     */
+    private static class FBucket {
+
+        private final List<TieBuckets> byViolations = new ArrayList<>(); // null until used
+        private int minViolations;
+        private int size;
+
+        void add(State state, int violations, int tieKey) {
+            while (byViolations.size() <= violations) byViolations.add(null);
+            TieBuckets tieBuckets = byViolations.get(violations);
+            if (tieBuckets == null) {
+                tieBuckets = new TieBuckets();
+                byViolations.set(violations, tieBuckets);
+            }
+            tieBuckets.add(state, tieKey);
+            if (size == 0 || violations < minViolations) minViolations = violations;
+            size++;
+        }
+
+        State remove() {
+            size--;
+            return first().remove();
+        }
+
+        State peek() {
+            return first().peek();
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            for (TieBuckets tieBuckets : byViolations) {
+                if (tieBuckets != null) tieBuckets.clear();
+            }
+            minViolations = 0;
+            size = 0;
+        }
+
+        private TieBuckets first() {
+            while (byViolations.get(minViolations) == null || byViolations.get(minViolations).isEmpty())
+                minViolations++;
+            return byViolations.get(minViolations);
+        }
+    }
+
+    /**
+     * Third level of the queue: states sharing an f-value and a number of
+     * CAT violations, bucketed by tie-breaking value. Each bucket is a stack.
+     */
+    private static class TieBuckets {
+
+        private final List<List<State>> stacks = new ArrayList<>(); // null until used
+        private int minKey;
+        private int size;
+
+        void add(State state, int key) {
+            while (stacks.size() <= key) stacks.add(null);
+            List<State> stack = stacks.get(key);
+            if (stack == null) {
+                stack = new ArrayList<>();
+                stacks.set(key, stack);
+            }
+            stack.add(state);
+            if (size == 0 || key < minKey) minKey = key;
+            size++;
+        }
+
+        State remove() {
+            List<State> stack = first();
+            size--;
+            return stack.remove(stack.size() - 1);
+        }
+
+        State peek() {
+            List<State> stack = first();
+            return stack.get(stack.size() - 1);
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            for (List<State> stack : stacks) {
+                if (stack != null) stack.clear();
+            }
+            minKey = 0;
+            size = 0;
+        }
+
+        private List<State> first() {
+            while (stacks.get(minKey) == null || stacks.get(minKey).isEmpty()) minKey++;
+            return stacks.get(minKey);
+        }
+    }
+}
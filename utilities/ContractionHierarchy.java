@@ -0,0 +1,492 @@
+package utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Contraction hierarchy over a graph's edge costs (terrain and diagonal
+ * penalties included) that answers exact point-to-point distance queries
+ * by searching a small part of the graph. Nodes are contracted one at a
+ * time in order of edge difference, contracted neighbors and level, adding
+ * shortcut edges between their neighbors wherever no witness path is
+ * found, and each node keeps only its edges to nodes contracted after it.
+ * The distance between two nodes is the cheapest meeting point of the
+ * upward searches from both of them.
+ * Edge costs are symmetric, so the same upward graph serves both searches.
+ * A hierarchy is built once per map and can be saved and loaded.
+ */
+public class ContractionHierarchy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int numNodes;
+    private final int[] rank;      // position of each node in the contraction order
+    private final int[] upOffsets; // upward edges of node i are [upOffsets[i], upOffsets[i + 1])
+    private final int[] upTargets;
+    private final double[] upCosts;
+
+    // scratch of each thread's upward searches, created on first use and after loading
+    private transient volatile ThreadLocal<UpwardSearch> searches;
+
+    /**
+     * Constructor that contracts every node of a graph
+     * @param graph the graph
+     */
+    public ContractionHierarchy(Graph graph) {
+        Builder builder = new Builder(graph);
+        builder.contractAll();
+        numNodes = graph.getSize();
+        rank = builder.rank;
+        upOffsets = new int[numNodes + 1];
+        for (int node = 0; node < numNodes; node++) upOffsets[node + 1] = upOffsets[node] + builder.upSizes[node];
+        upTargets = new int[upOffsets[numNodes]];
+        upCosts = new double[upOffsets[numNodes]];
+        for (int node = 0; node < numNodes; node++) {
+            System.arraycopy(builder.upTargets[node], 0, upTargets, upOffsets[node], builder.upSizes[node]);
+            System.arraycopy(builder.upCosts[node], 0, upCosts, upOffsets[node], builder.upSizes[node]);
+        }
+    }
+
+    /**
+     * Runs Dijkstra from a node over the upward edges only. Threads search
+     * with their own scratch space, so they may search at the same time
+     * @param source index in the graph of the node
+     * @return every node settled by the search and its distance from the source
+     */
+    public SearchSpace upwardSearch(int source) {
+        ThreadLocal<UpwardSearch> perThread = searches;
+        if (perThread == null) {
+            // racing threads may each install one, costing a thread at most one extra scratch space
+            perThread = ThreadLocal.withInitial(() -> new UpwardSearch(numNodes));
+            searches = perThread;
+        }
+        return perThread.get().run(source);
+    }
+
+    /**
+     * Returns the cost of the cheapest path between two nodes
+     * @param source index in the graph of one node
+     * @param target index in the graph of the other node
+     * @return the distance, or Double.POSITIVE_INFINITY if there is no path
+     */
+    public double distance(int source, int target) {
+        SearchSpace forward = upwardSearch(source);
+        SearchSpace backward = upwardSearch(target);
+        PackedKeyTable meeting = new PackedKeyTable(1, backward.size());
+        for (int i = 0; i < backward.size(); i++) meeting.put(backward.getNode(i), backward.getDistance(i));
+        return forward.meet(meeting);
+    }
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    public int getRank(int node) {
+        return rank[node];
+    }
+
+    public int getNumUpwardEdges() {
+        return upTargets.length;
+    }
+
+    /**
+     * Writes the hierarchy to a file
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void save(File file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * Reads a hierarchy written by save
+     * @param file the file
+     * @return the hierarchy
+     * @throws IOException if the file cannot be read or does not hold a hierarchy
+     */
+    public static ContractionHierarchy load(File file) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return (ContractionHierarchy) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a contraction hierarchy: " + file, e);
+        }
+    }
+
+    /**
+     * Nodes settled by an upward search, with their distances from its source
+     */
+    public static class SearchSpace {
+
+        private final int[] nodes;
+        private final double[] distances;
+
+        SearchSpace(int[] nodes, double[] distances) {
+            this.nodes = nodes;
+            this.distances = distances;
+        }
+
+        public int size() {
+            return nodes.length;
+        }
+
+        public int getNode(int i) {
+            return nodes[i];
+        }
+
+        public double getDistance(int i) {
+            return distances[i];
+        }
+
+        /**
+         * Finds the cheapest meeting point with another search space
+         * @param other the nodes settled by the other search, with their distances
+         * @return the cheapest total distance, or Double.POSITIVE_INFINITY if none meet
+         */
+        public double meet(PackedKeyTable other) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < nodes.length; i++) {
+                int slot = other.indexOf(nodes[i]);
+                if (slot != PackedKeyTable.NOT_FOUND) best = Math.min(best, distances[i] + other.valueAt(slot));
+            }
+            return best;
+        }
+    }
+
+    /**
+     * Scratch space for the upward searches of one thread, reused between
+     * queries
+     */
+    private class UpwardSearch {
+
+        private final double[] distances;
+        private final int[] stamps;
+        private final NodeHeap heap;
+        private int[] settled;
+        private int stamp;
+
+        UpwardSearch(int numNodes) {
+            distances = new double[numNodes];
+            stamps = new int[numNodes];
+            heap = new NodeHeap(numNodes);
+            settled = new int[64];
+        }
+
+        SearchSpace run(int source) {
+            stamp++;
+            heap.clear();
+            distances[source] = 0;
+            stamps[source] = stamp;
+            heap.push(source, 0);
+            int numSettled = 0;
+            while (!heap.isEmpty()) {
+                double distance = heap.peekKey();
+                int node = heap.pop();
+                if (distance > distances[node]) continue; // stale entry
+                if (numSettled == settled.length) settled = Arrays.copyOf(settled, 2 * settled.length);
+                settled[numSettled++] = node;
+                for (int edge = upOffsets[node]; edge < upOffsets[node + 1]; edge++) {
+                    int target = upTargets[edge];
+                    double next = distance + upCosts[edge];
+                    if (stamps[target] == stamp && next >= distances[target]) continue;
+                    stamps[target] = stamp;
+                    distances[target] = next;
+                    heap.push(target, next);
+                }
+            }
+            double[] settledDistances = new double[numSettled];
+            for (int i = 0; i < numSettled; i++) settledDistances[i] = distances[settled[i]];
+            return new SearchSpace(Arrays.copyOf(settled, numSettled), settledDistances);
+        }
+    }
+
+    /**
+     * Binary min-heap of nodes keyed by distance, allowing duplicate entries
+     */
+    private static class NodeHeap {
+
+        private int[] nodes;
+        private double[] keys;
+        private int size;
+
+        NodeHeap(int capacity) {
+            nodes = new int[Math.max(16, capacity / 16)];
+            keys = new double[nodes.length];
+        }
+
+        void push(int node, double key) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, 2 * size);
+                keys = Arrays.copyOf(keys, 2 * size);
+            }
+            int index = size++;
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                nodes[index] = nodes[parent];
+                keys[index] = keys[parent];
+                index = parent;
+            }
+            nodes[index] = node;
+            keys[index] = key;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        int pop() {
+            int top = nodes[0];
+            int lastNode = nodes[--size];
+            double lastKey = keys[size];
+            int index = 0;
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) break;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (keys[child] >= lastKey) break;
+                nodes[index] = nodes[child];
+                keys[index] = keys[child];
+                index = child;
+            }
+            if (size > 0) {
+                nodes[index] = lastNode;
+                keys[index] = lastKey;
+            }
+            return top;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Contracts the nodes of a graph, keeping the remaining graph
+     * (original edges plus shortcuts between nodes not contracted yet) as
+     * growable adjacency arrays. A node is unlinked from its neighbors when
+     * it is contracted, so the arrays only hold live edges.
+     */
+    private static class Builder {
+
+        // most edges on a witness path when contracting a node, and when only
+        // estimating its shortcuts to update its priority
+        private static final int WITNESS_HOP_LIMIT = 5;
+        private static final int SIMULATION_HOP_LIMIT = 1;
+        private static final int NOT_CONTRACTED = -1;
+
+        private final int numNodes;
+        private final int[][] targets;
+        private final double[][] costs;
+        private final int[] degrees;
+        private final int[] contractedNeighbors;
+        private final int[] levels; // one more than the highest level of a contracted neighbor
+        private final long[] priorities;
+        private final int[] rank;
+
+        private final int[][] upTargets;
+        private final double[][] upCosts;
+        private final int[] upSizes;
+
+        // witness search scratch
+        private final double[] witnessDistances;
+        private final int[] witnessHops;
+        private final int[] witnessStamps;
+        private final int[] witnessTargets; // stamp of the searches a node is a target of
+        private final NodeHeap witnessHeap;
+        private int witnessStamp;
+
+        Builder(Graph graph) {
+            numNodes = graph.getSize();
+            targets = new int[numNodes][];
+            costs = new double[numNodes][];
+            degrees = new int[numNodes];
+            contractedNeighbors = new int[numNodes];
+            levels = new int[numNodes];
+            priorities = new long[numNodes];
+            rank = new int[numNodes];
+            Arrays.fill(rank, NOT_CONTRACTED);
+            upTargets = new int[numNodes][];
+            upCosts = new double[numNodes][];
+            upSizes = new int[numNodes];
+            witnessDistances = new double[numNodes];
+            witnessHops = new int[numNodes];
+            witnessStamps = new int[numNodes];
+            witnessTargets = new int[numNodes];
+            witnessHeap = new NodeHeap(numNodes);
+
+            for (int node = 0; node < numNodes; node++) {
+                int degree = graph.getEdgeEnd(node) - graph.getEdgeStart(node);
+                targets[node] = new int[Math.max(degree, 1)];
+                costs[node] = new double[Math.max(degree, 1)];
+            }
+            for (int node = 0; node < numNodes; node++) {
+                for (int edge = graph.getEdgeStart(node); edge < graph.getEdgeEnd(node); edge++) {
+                    int target = graph.getEdgeTarget(edge);
+                    // keep the graph undirected even if a move is only legal one way
+                    addEdge(node, target, graph.getEdgeCost(edge));
+                    addEdge(target, node, graph.getEdgeCost(edge));
+                }
+            }
+        }
+
+        void contractAll() {
+            PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                                                                                    : Long.compare(a[1], b[1]));
+            for (int node = 0; node < numNodes; node++) {
+                priorities[node] = priority(node);
+                queue.add(new long[]{priorities[node], node});
+            }
+
+            int order = 0;
+            while (!queue.isEmpty()) {
+                long[] entry = queue.poll();
+                int node = (int) entry[1];
+                // skip entries left behind by a later update of the node
+                if (rank[node] != NOT_CONTRACTED || entry[0] != priorities[node]) continue;
+                int[] neighbors = Arrays.copyOf(targets[node], degrees[node]);
+                contract(node);
+                rank[node] = order++;
+                // only the neighbors of the node gained shortcuts or lost an edge
+                for (int neighbor : neighbors) {
+                    long updated = priority(neighbor);
+                    if (updated == priorities[neighbor]) continue;
+                    priorities[neighbor] = updated;
+                    queue.add(new long[]{updated, neighbor});
+                }
+            }
+        }
+
+        private long priority(int node) {
+            int shortcuts = contractNode(node, false);
+            return 2L * (shortcuts - degrees[node]) + contractedNeighbors[node] + levels[node];
+        }
+
+        private void contract(int node) {
+            contractNode(node, true);
+            // every edge left is to a node contracted later
+            upSizes[node] = degrees[node];
+            upTargets[node] = Arrays.copyOf(targets[node], degrees[node]);
+            upCosts[node] = Arrays.copyOf(costs[node], degrees[node]);
+            for (int i = 0; i < degrees[node]; i++) {
+                int neighbor = targets[node][i];
+                removeEdge(neighbor, node);
+                contractedNeighbors[neighbor]++;
+                levels[neighbor] = Math.max(levels[neighbor], levels[node] + 1);
+            }
+            targets[node] = null;
+            costs[node] = null;
+            degrees[node] = 0;
+        }
+
+        // counts (and if add is set, adds) the shortcuts needed to remove node
+        private int contractNode(int node, boolean add) {
+            int shortcuts = 0;
+            rank[node] = Integer.MAX_VALUE; // hide the node from witness searches
+            for (int i = 0; i < degrees[node]; i++) {
+                int from = targets[node][i];
+                double maxCost = 0;
+                for (int j = i + 1; j < degrees[node]; j++) maxCost = Math.max(maxCost, costs[node][j]);
+                if (maxCost == 0) continue;
+                witnessSearch(from, costs[node][i] + maxCost, node, i + 1,
+                        add ? WITNESS_HOP_LIMIT : SIMULATION_HOP_LIMIT);
+                for (int j = i + 1; j < degrees[node]; j++) {
+                    int to = targets[node][j];
+                    double viaNode = costs[node][i] + costs[node][j];
+                    if (witnessStamps[to] == witnessStamp && witnessDistances[to] <= viaNode) continue;
+                    shortcuts++;
+                    if (add) {
+                        addEdge(from, to, viaNode);
+                        addEdge(to, from, viaNode);
+                    }
+                }
+            }
+            rank[node] = NOT_CONTRACTED;
+            return shortcuts;
+        }
+
+        // Dijkstra over the remaining graph from a neighbor of node to its neighbors after it,
+        // bounded by cost and by the number of edges on a path, and stopped once they are settled
+        private void witnessSearch(int source, double maxCost, int node, int firstTarget, int hopLimit) {
+            witnessStamp++;
+            if (hopLimit == 1) {
+                // the only witnesses are the edges of the source, so there is nothing to search
+                for (int i = 0; i < degrees[source]; i++) {
+                    int target = targets[source][i];
+                    if (rank[target] != NOT_CONTRACTED) continue;
+                    witnessStamps[target] = witnessStamp;
+                    witnessDistances[target] = costs[source][i];
+                }
+                return;
+            }
+            int unsettledTargets = degrees[node] - firstTarget;
+            for (int j = firstTarget; j < degrees[node]; j++) witnessTargets[targets[node][j]] = witnessStamp;
+            witnessHeap.clear();
+            witnessDistances[source] = 0;
+            witnessHops[source] = 0;
+            witnessStamps[source] = witnessStamp;
+            witnessHeap.push(source, 0);
+            while (!witnessHeap.isEmpty()) {
+                double distance = witnessHeap.peekKey();
+                int settled = witnessHeap.pop();
+                if (distance > witnessDistances[settled]) continue;
+                if (distance > maxCost) break;
+                if (witnessTargets[settled] == witnessStamp && --unsettledTargets == 0) break;
+                if (witnessHops[settled] == hopLimit) continue;
+                for (int i = 0; i < degrees[settled]; i++) {
+                    int target = targets[settled][i];
+                    if (rank[target] != NOT_CONTRACTED) continue;
+                    double next = distance + costs[settled][i];
+                    if (next > maxCost) continue;
+                    if (witnessStamps[target] == witnessStamp && next >= witnessDistances[target]) continue;
+                    witnessStamps[target] = witnessStamp;
+                    witnessDistances[target] = next;
+                    witnessHops[target] = witnessHops[settled] + 1;
+                    witnessHeap.push(target, next);
+                }
+            }
+        }
+
+        // adds an edge, or lowers the cost of an existing one
+        private void addEdge(int from, int to, double cost) {
+            for (int i = 0; i < degrees[from]; i++) {
+                if (targets[from][i] == to) {
+                    costs[from][i] = Math.min(costs[from][i], cost);
+                    return;
+                }
+            }
+            if (degrees[from] == targets[from].length) {
+                targets[from] = Arrays.copyOf(targets[from], 2 * degrees[from]);
+                costs[from] = Arrays.copyOf(costs[from], 2 * degrees[from]);
+            }
+            targets[from][degrees[from]] = to;
+            costs[from][degrees[from]++] = cost;
+        }
+
+        // removes an edge by moving the last edge into its place
+        private void removeEdge(int from, int to) {
+            for (int i = 0; i < degrees[from]; i++) {
+                if (targets[from][i] == to) {
+                    int last = --degrees[from];
+                    targets[from][i] = targets[from][last];
+                    costs[from][i] = costs[from][last];
+                    return;
+                }
+            }
+        }
+    }
+}
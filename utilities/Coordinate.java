@@ -35,6 +35,14 @@ public class Coordinate {
         this.timeStep = timeStep;
     }
 
+    /**
+     * Mutator for the location of the coordinate
+     * @param node the updated location of the coordinate
+     */
+    public void setNode(Node node) {
+        this.node = node;
+    }
+
     /**
      * Accessor for the location of the coordinate
      * @return the location of the coordinate
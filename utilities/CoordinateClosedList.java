@@ -51,10 +51,8 @@ public class CoordinateClosedList implements IClosedList{
                 return false;
             }
         }
-        if (singleAgentState.gValue() < map.get(otherCoordinate)) {
-            add(singleAgentState);
-        }
-        return true;
+        // a cheaper path reopens the location; add() will overwrite the g-value
+        return singleAgentState.gValue() >= map.get(otherCoordinate);
     }
 
     @Override
@@ -68,6 +66,11 @@ public class CoordinateClosedList implements IClosedList{
         map.put(newCoordinate, singleAgentState.gValue());
     }
 
+    @Override
+    public int size() {
+        return map.size();
+    }
+
     @Override
     public void clear() {
         map.clear();
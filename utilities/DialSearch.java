@@ -0,0 +1,100 @@
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Single-source shortest paths over a graph's compressed sparse row
+ * adjacency using Dial's algorithm. Every edge cost is a multiple of
+ * 1 / RESOLUTION, so distances are kept as scaled integers and the
+ * priority queue is a circular array of buckets, one per distance.
+ */
+public class DialSearch {
+
+    private static final int RESOLUTION = 4;
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private DialSearch() {}
+
+    /**
+     * Computes the cost of the cheapest path from the source to every node.
+     * Edge costs are symmetric, so this is also the cost from every node
+     * to the source
+     * @param graph the graph to search
+     * @param source index in the graph of the source node
+     * @return the distances indexed by node, 0 for nodes that cannot be reached
+     */
+    public static double[] distancesFrom(Graph graph, int source) {
+        int numNodes = graph.getSize();
+        int[] distances = new int[numNodes];
+        Arrays.fill(distances, UNREACHED);
+
+        // pending keys never span more than one maximal edge, so they fit in the ring
+        int numBuckets = scale(graph.getMaxEdgeCost()) + 1;
+        int[][] buckets = new int[numBuckets][4];
+        int[] bucketSizes = new int[numBuckets];
+
+        distances[source] = 0;
+        buckets[0][bucketSizes[0]++] = source;
+        int pending = 1;
+        for (int distance = 0; pending > 0; distance++) {
+            int bucket = distance % numBuckets;
+            while (bucketSizes[bucket] > 0) {
+                int node = buckets[bucket][--bucketSizes[bucket]];
+                pending--;
+                if (distances[node] != distance) continue; // settled earlier at a lower distance
+
+                for (int edge = graph.getEdgeStart(node); edge < graph.getEdgeEnd(node); edge++) {
+                    int target = graph.getEdgeTarget(edge);
+                    int next = distance + scale(graph.getEdgeCost(edge));
+                    if (next >= distances[target]) continue;
+                    distances[target] = next;
+                    int nextBucket = next % numBuckets;
+                    if (bucketSizes[nextBucket] == buckets[nextBucket].length) {
+                        buckets[nextBucket] = Arrays.copyOf(buckets[nextBucket], 2 * buckets[nextBucket].length);
+                    }
+                    buckets[nextBucket][bucketSizes[nextBucket]++] = target;
+                    pending++;
+                }
+            }
+        }
+
+        double[] result = new double[numNodes];
+        for (int node = 0; node < numNodes; node++) {
+            if (distances[node] != UNREACHED) result[node] = (double) distances[node] / RESOLUTION;
+        }
+        return result;
+    }
+
+    /**
+     * Computes the fewest moves needed to get from the source to every node,
+     * ignoring edge costs. This is a breadth-first search
+     * @param graph the graph to search
+     * @param source index in the graph of the source node
+     * @return the number of moves indexed by node, 0 for nodes that cannot be reached
+     */
+    public static int[] stepsFrom(Graph graph, int source) {
+        int numNodes = graph.getSize();
+        int[] steps = new int[numNodes];
+        boolean[] reached = new boolean[numNodes];
+        int[] queue = new int[numNodes];
+        int head = 0;
+        int tail = 0;
+        reached[source] = true;
+        queue[tail++] = source;
+        while (head < tail) {
+            int node = queue[head++];
+            for (int edge = graph.getEdgeStart(node); edge < graph.getEdgeEnd(node); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (reached[target]) continue;
+                reached[target] = true;
+                steps[target] = steps[node] + 1;
+                queue[tail++] = target;
+            }
+        }
+        return steps;
+    }
+
+    private static int scale(double cost) {
+        return (int) Math.round(cost * RESOLUTION);
+    }
+}
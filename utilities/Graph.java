@@ -1,4 +1,8 @@
 package utilities;
+import constants.Costs;
+import constants.Positions;
+import constants.Terrain;
+
 import java.io.InputStream;
 import java.net.Inet4Address;
 import java.util.*;
@@ -24,6 +28,18 @@ public class Graph {
 	private String mapTitle;
 
 	private Map<Integer, Integer> indexInMapToIndexInGraph;
+
+	// compressed sparse row adjacency: the legal moves out of node i are the
+	// edges in [edgeOffsets[i], edgeOffsets[i + 1]), in neighbor position order
+	private int[] edgeOffsets;
+	private int[] edgeTargets;
+	private int[] edgePositions;
+	private double[] edgeCosts;
+	private int[] moveMasks;
+	private double maxEdgeCost;
+	private ContractionHierarchy contractionHierarchy;
+
+	public static final int NO_EDGE = -1;
 	
 	private static final Node OBSTACLE = null;
 	
@@ -41,6 +57,7 @@ public class Graph {
 		map = new ProblemMap(mapFile);
 		nodes = generateGraph();
 		indexInMapToIndexInGraph = generateIndexMap();
+		buildAdjacency();
 	}
 
 	public Graph(Connected c, ProblemMap problemMap) {
@@ -48,6 +65,7 @@ public class Graph {
 		map = problemMap;
 		nodes = generateGraph();
 		indexInMapToIndexInGraph = generateIndexMap();
+		buildAdjacency();
 	}
 
     /**
@@ -63,6 +81,7 @@ public class Graph {
 		map = new ProblemMap(obstacleProbability, 32, 32);
 		nodes = generateGraph();
 		indexInMapToIndexInGraph = generateIndexMap();
+		buildAdjacency();
 		agents = generateRandomAgents(5);
 	}
 
@@ -96,12 +115,58 @@ public class Graph {
 		// remove the obstacles from the graph
 		List<Node> cleanGraph = new ArrayList<Node>();
 		for (Node node : rawGraphNodes) {
-			if (node != OBSTACLE) cleanGraph.add(node);
+			if (node != OBSTACLE) {
+				node.precomputeReachability();
+				cleanGraph.add(node);
+			}
 		}
 		
 		return cleanGraph;
 	}
 
+	// flattens the legal moves of every node into the CSR arrays, with terrain
+	// and diagonal penalties folded into the edge costs
+	private void buildAdjacency() {
+		int numNodes = nodes.size();
+		edgeOffsets = new int[numNodes + 1];
+		moveMasks = new int[numNodes];
+		for (int i = 0; i < numNodes; i++) {
+			Node[] neighbors = nodes.get(i).getNeighbors();
+			for (int position = 0; position < neighbors.length; position++) {
+				if (neighbors[position] != OBSTACLE && neighbors[position].isReachable(position)) {
+					moveMasks[i] |= 1 << position;
+				}
+			}
+			edgeOffsets[i + 1] = edgeOffsets[i] + Integer.bitCount(moveMasks[i]);
+		}
+
+		int numEdges = edgeOffsets[numNodes];
+		edgeTargets = new int[numEdges];
+		edgePositions = new int[numEdges];
+		edgeCosts = new double[numEdges];
+		for (int i = 0; i < numNodes; i++) {
+			Node node = nodes.get(i);
+			int edge = edgeOffsets[i];
+			for (int position = 0; position < node.getNeighbors().length; position++) {
+				if ((moveMasks[i] & (1 << position)) == 0) continue;
+				Node neighbor = node.getNeighbors()[position];
+				edgeTargets[edge] = neighbor.getIndexInGraph();
+				edgePositions[edge] = position;
+				edgeCosts[edge] = moveCost(node, neighbor, position);
+				maxEdgeCost = Math.max(maxEdgeCost, edgeCosts[edge]);
+				edge++;
+			}
+		}
+	}
+
+	// cost of moving between neighbors, including diagonal and terrain penalties
+	private static double moveCost(Node from, Node to, int position) {
+		double cost = Positions.isDiagonal(position) ? Costs.DIAGONAL : Costs.ADJACENT;
+		if (from.getType() == Terrain.WATER || to.getType() == Terrain.WATER) cost *= Costs.WATER_PENALTY;
+		else if (from.getType() == Terrain.TREE || to.getType() == Terrain.TREE) cost *= Costs.TREE_PENALTY;
+		return cost;
+	}
+
 	private Map<Integer, Integer> generateIndexMap() {
 		Map<Integer, Integer> resultMap = new HashMap<>();
 
@@ -191,6 +256,115 @@ public class Graph {
 		return nodes;
 	}
 
+	/**
+	 * Returns the first edge leaving a node. The edges leaving node are
+	 * getEdgeStart(node) inclusive to getEdgeEnd(node) exclusive, and only
+	 * contain legal moves
+	 * @param node index of the node in the graph
+	 * @return index of the first edge leaving the node
+	 */
+	public int getEdgeStart(int node) {
+		return edgeOffsets[node];
+	}
+
+	/**
+	 * Returns one past the last edge leaving a node
+	 * @param node index of the node in the graph
+	 * @return index one past the last edge leaving the node
+	 */
+	public int getEdgeEnd(int node) {
+		return edgeOffsets[node + 1];
+	}
+
+	/**
+	 * Returns the node an edge leads to
+	 * @param edge index of the edge
+	 * @return index in the graph of the node the edge leads to
+	 */
+	public int getEdgeTarget(int edge) {
+		return edgeTargets[edge];
+	}
+
+	/**
+	 * Returns the cost of an edge, including diagonal and terrain penalties
+	 * @param edge index of the edge
+	 * @return the cost of moving along the edge
+	 */
+	public double getEdgeCost(int edge) {
+		return edgeCosts[edge];
+	}
+
+	/**
+	 * Returns the position (see constants.Positions) of an edge's target
+	 * relative to its source
+	 * @param edge index of the edge
+	 * @return the position of the edge's target
+	 */
+	public int getEdgePosition(int edge) {
+		return edgePositions[edge];
+	}
+
+	/**
+	 * Returns a bitmask of the legal moves out of a node, with bit p
+	 * set if the move to the neighbor at position p is legal
+	 * @param node index of the node in the graph
+	 * @return the bitmask of legal moves
+	 */
+	public int getMoveMask(int node) {
+		return moveMasks[node];
+	}
+
+	/**
+	 * Returns the edge from one node to another
+	 * @param from index of the source node
+	 * @param to index of the target node
+	 * @return index of the edge, or NO_EDGE if the move is not legal
+	 */
+	public int findEdge(int from, int to) {
+		for (int edge = edgeOffsets[from]; edge < edgeOffsets[from + 1]; edge++) {
+			if (edgeTargets[edge] == to) return edge;
+		}
+		return NO_EDGE;
+	}
+
+	/**
+	 * Returns the cost of the most expensive edge in the graph
+	 * @return the largest edge cost, or 0 if the graph has no edges
+	 */
+	public double getMaxEdgeCost() {
+		return maxEdgeCost;
+	}
+
+	/**
+	 * Returns the contraction hierarchy of the graph, contracting
+	 * it the first time it is needed
+	 * @return the contraction hierarchy of the graph
+	 */
+	public synchronized ContractionHierarchy getContractionHierarchy() {
+		if (contractionHierarchy == null) contractionHierarchy = new ContractionHierarchy(this);
+		return contractionHierarchy;
+	}
+
+	/**
+	 * Sets the contraction hierarchy of the graph, such as one loaded
+	 * from a file, so that it does not need to be contracted again
+	 * @param hierarchy a hierarchy built from a graph of the same map
+	 */
+	public synchronized void setContractionHierarchy(ContractionHierarchy hierarchy) {
+		if (hierarchy.getNumNodes() != getSize())
+			throw new IllegalArgumentException("Hierarchy has " + hierarchy.getNumNodes() + " nodes, expected "
+					+ getSize());
+		contractionHierarchy = hierarchy;
+	}
+
+	/**
+	 * Returns the number of edges in the graph
+	 * @return the number of edges in the graph
+	 */
+	public int getNumEdges() {
+		return edgeTargets.length;
+	}
+
 	/**
 	 * Accessor for the connectedness of the graph
 	 * @return Returns the connectedness of the graph
@@ -21,6 +21,12 @@ public interface IClosedList {
      */
     void add(State state);
 
+    /**
+     * Returns the number of entries in the closed list
+     * @return the number of entries in the closed list
+     */
+    int size();
+
     /**
      * Empties the closed list
      */
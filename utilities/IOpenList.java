@@ -0,0 +1,47 @@
+package utilities;
+
+import solvers.astar.State;
+
+/**
+ * Specifies methods for an open list in an
+ * A*-based solver
+ */
+public interface IOpenList {
+
+    /**
+     * Adds this state to the open list
+     * @param state state to add
+     */
+    void add(State state);
+
+    /**
+     * Removes and returns the best state in the open list
+     * @return the best state in the open list
+     * @throws java.util.NoSuchElementException if the open list is empty
+     */
+    State remove();
+
+    /**
+     * Returns the best state in the open list without removing it
+     * @return the best state in the open list, or null if it is empty
+     */
+    State peek();
+
+    /**
+     * Returns whether the open list is empty
+     * @return true if the open list is empty, false otherwise
+     */
+    boolean isEmpty();
+
+    /**
+     * Returns the number of states in the open list
+     * @return the number of states in the open list
+     */
+    int size();
+
+    /**
+     * Empties the open list
+     */
+    void clear();
+
+}
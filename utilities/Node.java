@@ -12,6 +12,7 @@ public class Node {
 	private Node[] neighbors;
 	private int indexInMap;
 	private int indexInGraph;
+	private int reachableMask;
 
 	/**
 	 * Constructor that creates a node with the given fields
@@ -76,6 +77,21 @@ public class Node {
      * @return true if the neighbor is reachable, false otherwise
      */
 	public boolean isReachable(int position) {
+		return (reachableMask & (1 << position)) != 0;
+	}
+
+	/**
+	 * Caches the result of isReachable for every position.
+	 * Must be called once all neighbors have been added
+	 */
+	void precomputeReachability() {
+		reachableMask = 0;
+		for (int position = 0; position < neighbors.length; position++) {
+			if (computeReachable(position)) reachableMask |= 1 << position;
+		}
+	}
+
+	private boolean computeReachable(int position) {
 		if (connNumber(connectedness) == 4) return true;
 		if (position == Positions.TOP_RIGHT) {
 			if (neighbors[Positions.LEFT] == null || neighbors[Positions.BOTTOM] == null) return false;
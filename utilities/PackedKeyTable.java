@@ -0,0 +1,201 @@
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from fixed-width packed keys (one or more longs)
+ * to double values. Keys and values live in flat primitive arrays, so lookups
+ * do not allocate or chase pointers.
+ */
+public class PackedKeyTable {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int DEFAULT_CAPACITY = 1 << 10;
+
+    private final int width;
+    private long[] keys;
+    private double[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates an empty table for keys made of the given number of longs
+     * @param width number of longs in each key
+     */
+    public PackedKeyTable(int width) {
+        this(width, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty table for keys made of the given number of longs
+     * @param width number of longs in each key
+     * @param initialCapacity expected number of entries
+     */
+    public PackedKeyTable(int width, int initialCapacity) {
+        if (width < 1) throw new IllegalArgumentException("Key width must be positive: " + width);
+        this.width = width;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * Returns the slot holding the given key
+     * @param key the key, of length equal to the table's width
+     * @return the slot holding the key, or NOT_FOUND
+     */
+    public int indexOf(long[] key) {
+        int slot = (int) hash(key, 0) & mask;
+        while (used[slot]) {
+            if (keyEquals(slot, key)) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Returns the slot holding the given single-long key
+     * @param key the key; the table must have width 1
+     * @return the slot holding the key, or NOT_FOUND
+     */
+    public int indexOf(long key) {
+        int slot = (int) mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Associates the value with the key, replacing any previous value
+     * @param key the key, of length equal to the table's width
+     * @param value the value
+     */
+    public void put(long[] key, double value) {
+        if (2 * (size + 1) > used.length) grow();
+        int slot = (int) hash(key, 0) & mask;
+        while (used[slot]) {
+            if (keyEquals(slot, key)) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        System.arraycopy(key, 0, keys, slot * width, width);
+        insertAt(slot, value);
+    }
+
+    /**
+     * Associates the value with the single-long key, replacing any previous value
+     * @param key the key; the table must have width 1
+     * @param value the value
+     */
+    public void put(long key, double value) {
+        if (2 * (size + 1) > used.length) grow();
+        int slot = (int) mix(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        insertAt(slot, value);
+    }
+
+    /**
+     * Returns the value stored in a slot
+     * @param slot a slot returned by indexOf
+     * @return the value in the slot
+     */
+    public double valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Overwrites the value stored in a slot
+     * @param slot a slot returned by indexOf
+     * @param value the new value
+     */
+    public void setValueAt(int slot, double value) {
+        values[slot] = value;
+    }
+
+    /**
+     * Returns the number of keys in the table
+     * @return the number of keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every key, keeping the allocated capacity
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    private void insertAt(int slot, double value) {
+        values[slot] = value;
+        used[slot] = true;
+        size++;
+    }
+
+    private boolean keyEquals(int slot, long[] key) {
+        int base = slot * width;
+        for (int i = 0; i < width; i++) {
+            if (keys[base + i] != key[i]) return false;
+        }
+        return true;
+    }
+
+    private long hash(long[] source, int offset) {
+        long h = 0;
+        for (int i = 0; i < width; i++) {
+            h = h * 0x9E3779B97F4A7C15L + source[offset + i];
+        }
+        return mix(h);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldUsed.length * 2);
+        for (int oldSlot = 0; oldSlot < oldUsed.length; oldSlot++) {
+            if (!oldUsed[oldSlot]) continue;
+            int slot = (int) (width == 1 ? mix(oldKeys[oldSlot]) : hash(oldKeys, oldSlot * width)) & mask;
+            while (used[slot]) slot = (slot + 1) & mask;
+            System.arraycopy(oldKeys, oldSlot * width, keys, slot * width, width);
+            insertAt(slot, oldValues[oldSlot]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * width];
+        values = new double[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = 16;
+        while (capacity < 2 * expected) capacity <<= 1;
+        return capacity;
+    }
+}
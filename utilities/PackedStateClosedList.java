@@ -0,0 +1,92 @@
+package utilities;
+
+import solvers.astar.State;
+import solvers.states.MultiAgentState;
+import solvers.states.ODState;
+import solvers.states.SingleAgentState;
+
+import java.util.List;
+
+/**
+ * Maintains a closed list of states encoded as packed node indices.
+ * Each agent's node index takes just enough bits to address the graph,
+ * followed by the index of the next agent to move for operator decomposition
+ * states. Keys that fit in 64 bits take a single long; larger groups spill
+ * into further longs. g-values are kept alongside in a PackedKeyTable.
+ */
+public class PackedStateClosedList implements IClosedList {
+
+    private final int nodeBits;
+    private final int moveNextBits;
+    private final long[] key; // scratch buffer, reused for every lookup
+    private final PackedKeyTable table;
+
+    /**
+     * Creates an empty closed list for states of the given problem instance
+     * @param problemInstance the problem instance being solved
+     */
+    public PackedStateClosedList(ProblemInstance problemInstance) {
+        int numAgents = problemInstance.getAgents().size();
+        nodeBits = bitsFor(problemInstance.getGraph().getSize());
+        moveNextBits = bitsFor(numAgents);
+        int words = (numAgents * nodeBits + moveNextBits + Long.SIZE - 1) / Long.SIZE;
+        key = new long[words];
+        table = new PackedKeyTable(words);
+    }
+
+    @Override
+    public boolean contains(State state) {
+        encode(state);
+        int slot = table.indexOf(key);
+        // a cheaper path to the same state reopens it; add() will overwrite the g-value
+        return slot != PackedKeyTable.NOT_FOUND && state.gValue() >= table.valueAt(slot);
+    }
+
+    @Override
+    public void add(State state) {
+        if (!state.belongsInClosedList()) return;
+        encode(state);
+        table.put(key, state.gValue());
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    private void encode(State state) {
+        for (int i = 0; i < key.length; i++) key[i] = 0;
+        int offset = 0;
+        if (state instanceof SingleAgentState) {
+            write(((SingleAgentState) state).coordinate().getNode().getIndexInGraph(), nodeBits, offset);
+            return;
+        }
+        List<SingleAgentState> singleAgentStates = ((MultiAgentState) state).getSingleAgentStates();
+        for (SingleAgentState singleAgentState : singleAgentStates) {
+            write(singleAgentState.coordinate().getNode().getIndexInGraph(), nodeBits, offset);
+            offset += nodeBits;
+        }
+        if (state instanceof ODState) {
+            write(((ODState) state).getMoveNext(), moveNextBits, offset);
+        }
+    }
+
+    private void write(long value, int bits, int offset) {
+        int word = offset >>> 6;
+        int shift = offset & 63;
+        key[word] |= value << shift;
+        if (shift + bits > Long.SIZE) {
+            key[word + 1] |= value >>> (Long.SIZE - shift);
+        }
+    }
+
+    // number of bits needed to store values in [0, count)
+    private static int bitsFor(int count) {
+        return Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(Math.max(count - 1, 1)));
+    }
+}
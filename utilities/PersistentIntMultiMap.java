@@ -0,0 +1,305 @@
+package utilities;
+
+import java.util.Arrays;
+
+/**
+ * Hash array mapped trie from keys of two longs to lists of int values, each
+ * list in the order its values were added. copy() returns a table that
+ * shares every node with this one, in constant time; after a copy, an edit of
+ * either table copies the nodes on the path to the key it changes, and leaves
+ * the other table as it was. Edits between copies change the nodes that the
+ * table created since its last copy in place, so a batch of edits does not
+ * copy the same nodes over and over. Nodes that no table refers to any more
+ * are garbage collected.
+ */
+public class PersistentIntMultiMap {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final int[] NO_VALUES = new int[0];
+
+    private Trie root;
+    private int keyCount;
+    private int size;
+    private Object owner; // marks the nodes this table may change in place
+
+    /**
+     * Creates an empty table
+     */
+    public PersistentIntMultiMap() {
+        owner = new Object();
+    }
+
+    private PersistentIntMultiMap(PersistentIntMultiMap other) {
+        root = other.root;
+        keyCount = other.keyCount;
+        size = other.size;
+        owner = new Object();
+    }
+
+    /**
+     * Returns the values of a key
+     * @param key1 first long of the key
+     * @param key2 second long of the key
+     * @return the values in the order they were added, empty if the key has
+     *         none. The array is shared and must not be modified.
+     */
+    public int[] get(long key1, long key2) {
+        int hash = hash(key1, key2);
+        Trie trie = root;
+        for (int shift = 0; trie != null; shift += BITS) {
+            if (trie.collisions) return trie.find(key1, key2);
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((trie.bitmap & bit) == 0) return NO_VALUES;
+            Object child = trie.children[Integer.bitCount(trie.bitmap & (bit - 1))];
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                return leaf.key1 == key1 && leaf.key2 == key2 ? leaf.values : NO_VALUES;
+            }
+            trie = (Trie) child;
+        }
+        return NO_VALUES;
+    }
+
+    /**
+     * Returns whether a value is in the list of a key
+     * @param key1 first long of the key
+     * @param key2 second long of the key
+     * @param value the value
+     * @return true if the list of the key holds the value
+     */
+    public boolean contains(long key1, long key2, int value) {
+        for (int found : get(key1, key2)) {
+            if (found == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a value to the list of a key
+     * @param key1 first long of the key
+     * @param key2 second long of the key
+     * @param value the value
+     */
+    public void add(long key1, long key2, int value) {
+        int hash = hash(key1, key2);
+        if (root == null) root = new Trie(owner, 0, new Object[0], false);
+        root = add(root, 0, new Leaf(key1, key2, hash, new int[] {value}), value);
+        size++;
+    }
+
+    private Trie add(Trie trie, int shift, Leaf added, int value) {
+        if (trie.collisions) {
+            for (int i = 0; i < trie.children.length; i++) {
+                Leaf leaf = (Leaf) trie.children[i];
+                if (leaf.key1 == added.key1 && leaf.key2 == added.key2) {
+                    return editable(trie).set(i, leaf.plus(value));
+                }
+            }
+            keyCount++;
+            return editable(trie).insert(trie.children.length, trie.children.length, 0, added);
+        }
+        int bit = 1 << ((added.hash >>> shift) & MASK);
+        int index = Integer.bitCount(trie.bitmap & (bit - 1));
+        if ((trie.bitmap & bit) == 0) {
+            keyCount++;
+            return editable(trie).insert(index, trie.children.length, bit, added);
+        }
+        Object child = trie.children[index];
+        Object replacement;
+        if (child instanceof Trie) {
+            replacement = add((Trie) child, shift + BITS, added, value);
+        } else {
+            Leaf leaf = (Leaf) child;
+            if (leaf.key1 == added.key1 && leaf.key2 == added.key2) {
+                replacement = leaf.plus(value);
+            } else {
+                keyCount++;
+                replacement = split(leaf, added, shift + BITS);
+            }
+        }
+        return child == replacement ? trie : editable(trie).set(index, replacement);
+    }
+
+    // a trie holding two leaves that shared a slot
+    private Trie split(Leaf leaf, Leaf added, int shift) {
+        if (shift >= Integer.SIZE) return new Trie(owner, 0, new Object[] {leaf, added}, true);
+        int slot1 = (leaf.hash >>> shift) & MASK;
+        int slot2 = (added.hash >>> shift) & MASK;
+        if (slot1 == slot2) return new Trie(owner, 1 << slot1, new Object[] {split(leaf, added, shift + BITS)}, false);
+        Object[] children = slot1 < slot2 ? new Object[] {leaf, added} : new Object[] {added, leaf};
+        return new Trie(owner, (1 << slot1) | (1 << slot2), children, false);
+    }
+
+    /**
+     * Removes the first occurrence of a value from the list of a key,
+     * deleting the key if its list becomes empty
+     * @param key1 first long of the key
+     * @param key2 second long of the key
+     * @param value the value
+     * @return true if the list of the key held the value
+     */
+    public boolean remove(long key1, long key2, int value) {
+        if (!contains(key1, key2, value)) return false;
+        root = remove(root, 0, key1, key2, hash(key1, key2), value);
+        size--;
+        return true;
+    }
+
+    // only called for a key whose list holds the value; returns null for a trie that became empty
+    private Trie remove(Trie trie, int shift, long key1, long key2, int hash, int value) {
+        int index;
+        if (trie.collisions) {
+            index = 0;
+            while (((Leaf) trie.children[index]).key1 != key1 || ((Leaf) trie.children[index]).key2 != key2) index++;
+        } else {
+            index = Integer.bitCount(trie.bitmap & ((1 << ((hash >>> shift) & MASK)) - 1));
+        }
+        Object child = trie.children[index];
+        Object replacement = child instanceof Trie ?
+                remove((Trie) child, shift + BITS, key1, key2, hash, value) : ((Leaf) child).minus(value);
+        if (replacement != null) return editable(trie).set(index, replacement);
+
+        if (child instanceof Leaf) keyCount--;
+        if (trie.children.length == 1) return null;
+        int bit = trie.collisions ? 0 : 1 << ((hash >>> shift) & MASK);
+        return editable(trie).delete(index, bit);
+    }
+
+    /**
+     * Returns the number of keys with values
+     * @return the number of keys
+     */
+    public int keyCount() {
+        return keyCount;
+    }
+
+    /**
+     * Returns the number of values in all lists
+     * @return the number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every key and value
+     */
+    public void clear() {
+        root = null;
+        keyCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns a copy of the table in constant time. Later edits of either
+     * table do not show in the other.
+     * @return the copy
+     */
+    public PersistentIntMultiMap copy() {
+        owner = new Object(); // the nodes are shared from now on
+        return new PersistentIntMultiMap(this);
+    }
+
+    private Trie editable(Trie trie) {
+        return trie.owner == owner ? trie : new Trie(owner, trie.bitmap, trie.children.clone(), trie.collisions);
+    }
+
+    // murmur3 finalizer of the combined key, folded to 32 bits
+    private static int hash(long key1, long key2) {
+        long h = key1 * 0x9E3779B97F4A7C15L + key2;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * A node of the trie: a bitmap of the used slots of the next five bits of
+     * the hash and the tries or leaves in them, or, below the last bits of the
+     * hash, the leaves whose hashes are all equal
+     */
+    private static final class Trie {
+
+        private final Object owner;
+        private int bitmap;
+        private Object[] children;
+        private final boolean collisions;
+
+        Trie(Object owner, int bitmap, Object[] children, boolean collisions) {
+            this.owner = owner;
+            this.bitmap = bitmap;
+            this.children = children;
+            this.collisions = collisions;
+        }
+
+        int[] find(long key1, long key2) {
+            for (Object child : children) {
+                Leaf leaf = (Leaf) child;
+                if (leaf.key1 == key1 && leaf.key2 == key2) return leaf.values;
+            }
+            return NO_VALUES;
+        }
+
+        Trie set(int index, Object child) {
+            children[index] = child;
+            return this;
+        }
+
+        Trie insert(int index, int length, int bit, Object child) {
+            Object[] inserted = new Object[length + 1];
+            System.arraycopy(children, 0, inserted, 0, index);
+            inserted[index] = child;
+            System.arraycopy(children, index, inserted, index + 1, length - index);
+            children = inserted;
+            bitmap |= bit;
+            return this;
+        }
+
+        Trie delete(int index, int bit) {
+            Object[] deleted = new Object[children.length - 1];
+            System.arraycopy(children, 0, deleted, 0, index);
+            System.arraycopy(children, index + 1, deleted, index, deleted.length - index);
+            children = deleted;
+            bitmap &= ~bit;
+            return this;
+        }
+    }
+
+    /**
+     * A key and its values, never changed once created
+     */
+    private static final class Leaf {
+
+        private final long key1;
+        private final long key2;
+        private final int hash;
+        private final int[] values;
+
+        Leaf(long key1, long key2, int hash, int[] values) {
+            this.key1 = key1;
+            this.key2 = key2;
+            this.hash = hash;
+            this.values = values;
+        }
+
+        Leaf plus(int value) {
+            int[] added = Arrays.copyOf(values, values.length + 1);
+            added[values.length] = value;
+            return new Leaf(key1, key2, hash, added);
+        }
+
+        // null if the value was the last one
+        Leaf minus(int value) {
+            if (values.length == 1) return null;
+            int[] removed = new int[values.length - 1];
+            int index = 0;
+            while (values[index] != value) index++;
+            System.arraycopy(values, 0, removed, 0, index);
+            System.arraycopy(values, index + 1, removed, index, removed.length - index);
+            return new Leaf(key1, key2, hash, removed);
+        }
+    }
+}
@@ -115,13 +115,25 @@ public class ProblemInstance {
      * @param nAgents number of agents
      */
 	public ProblemInstance(Graph graph, int nAgents) {
+        this(graph, nAgents, null);
+        trueDistanceHeuristic = new TDHeuristic(this);
+	}
+
+    /**
+     * Constructor that creates a problem instance with the specified graph
+     * and nAgents randomly generated agents, using the given heuristic
+     * @param graph the graph
+     * @param nAgents number of agents
+     * @param heuristic the heuristic, such as a LandmarkHeuristic
+     */
+	public ProblemInstance(Graph graph, int nAgents, TDHeuristic heuristic) {
         this.graph = graph;
         this.agents = graph.generateRandomAgents(nAgents);
         while (duplicateGoalsOrStarts(agents)) {
             agents = graph.generateRandomAgents(nAgents);
         }
 		goalPositions = agentGoals();
-        trueDistanceHeuristic = new TDHeuristic(this);
+        trueDistanceHeuristic = heuristic;
 	}
 
 	public TDHeuristic getTrueDistanceHeuristic() {
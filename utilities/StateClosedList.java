@@ -38,6 +38,11 @@ public class StateClosedList implements IClosedList {
         if (state.belongsInClosedList()) map.put(state, state);
     }
 
+    @Override
+    public int size() {
+        return map.size();
+    }
+
     @Override
     public void clear() {
         map.clear();
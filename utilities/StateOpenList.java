@@ -0,0 +1,51 @@
+package utilities;
+
+import solvers.astar.State;
+
+import java.util.PriorityQueue;
+
+/**
+ * Maintains an open list of states in a binary heap
+ * ordered by State.compareTo
+ */
+public class StateOpenList implements IOpenList {
+
+    private PriorityQueue<State> queue;
+
+    /**
+     * Creates an empty open list
+     */
+    public StateOpenList() {
+        queue = new PriorityQueue<>();
+    }
+
+    @Override
+    public void add(State state) {
+        queue.add(state);
+    }
+
+    @Override
+    public State remove() {
+        return queue.remove();
+    }
+
+    @Override
+    public State peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public void clear() {
+        queue.clear();
+    }
+}
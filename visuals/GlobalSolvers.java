@@ -2,15 +2,19 @@ package visuals;
 
 import constants.CostFunction;
 import solvers.Solver;
+import solvers.astar.EPEAStar;
 import solvers.astar.GenericAStar;
 import solvers.astar.MultiAgentAStar;
 import solvers.astar.OperatorDecomposition;
+import solvers.astar.SafeIntervalPathPlanning;
+import solvers.astar.SpaceTimeAStar;
 import solvers.c_astar.CAStar;
 import solvers.cbs.ConflictBasedSearch;
 import solvers.independence_detection.EnhancedID;
 import solvers.independence_detection.IndependenceDetection;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Created by maxgray on 4/17/16.
@@ -20,20 +24,34 @@ public class GlobalSolvers {
 
     public static Map<String, Solver> solverMap;
 
+    // creates a new instance of each solver, for callers that solve
+    // several problems at once and cannot share the instances above
+    public static Map<String, Supplier<Solver>> solverFactories;
+
     static {
-        solverMap = mapSolversToStringRepresentations(
+        solverFactories = mapFactoriesToStringRepresentations(
                 Arrays.asList(
-                        new CAStar(),
-                        new MultiAgentAStar(CostFunction.MAKESPAN),
-                        new MultiAgentAStar(CostFunction.SUM_OF_COSTS),
-                        new OperatorDecomposition(),
-                        new IndependenceDetection(new MultiAgentAStar(CostFunction.SUM_OF_COSTS)),
-                        new IndependenceDetection(new MultiAgentAStar(CostFunction.MAKESPAN)),
-                        new EnhancedID(new MultiAgentAStar(CostFunction.SUM_OF_COSTS)),
-                        new EnhancedID(new MultiAgentAStar(CostFunction.MAKESPAN)),
-                        new ConflictBasedSearch()
+                        CAStar::new,
+                        () -> new CAStar(SafeIntervalPathPlanning::new),
+                        () -> new MultiAgentAStar(CostFunction.MAKESPAN),
+                        () -> new MultiAgentAStar(CostFunction.SUM_OF_COSTS),
+                        OperatorDecomposition::new,
+                        EPEAStar::new,
+                        () -> new IndependenceDetection(new MultiAgentAStar(CostFunction.SUM_OF_COSTS)),
+                        () -> new IndependenceDetection(new MultiAgentAStar(CostFunction.MAKESPAN)),
+                        () -> new IndependenceDetection(new MultiAgentAStar(CostFunction.SUM_OF_COSTS),
+                                                        new SafeIntervalPathPlanning()),
+                        () -> new EnhancedID(new MultiAgentAStar(CostFunction.SUM_OF_COSTS)),
+                        () -> new EnhancedID(new MultiAgentAStar(CostFunction.MAKESPAN)),
+                        ConflictBasedSearch::new,
+                        () -> new ConflictBasedSearch(SpaceTimeAStar::new),
+                        () -> new ConflictBasedSearch(SafeIntervalPathPlanning::new)
                 )
         );
+        solverMap = new TreeMap<>();
+        for (Map.Entry<String, Supplier<Solver>> entry : solverFactories.entrySet()) {
+            solverMap.put(entry.getKey(), entry.getValue().get());
+        }
     }
 
     public static CAStar caStar = new CAStar();
@@ -43,10 +61,10 @@ public class GlobalSolvers {
     public static IndependenceDetection idWithAStarSOC = new IndependenceDetection(new MultiAgentAStar(CostFunction.SUM_OF_COSTS));
     public static IndependenceDetection idWithAStarMakespan = new IndependenceDetection(new MultiAgentAStar(CostFunction.MAKESPAN));
 
-    private static Map<String, Solver> mapSolversToStringRepresentations(List<Solver> solvers) {
-        Map<String, Solver> result = new TreeMap<>();
-        for (Solver solver : solvers) {
-            result.put(solver.toString(), solver);
+    private static Map<String, Supplier<Solver>> mapFactoriesToStringRepresentations(List<Supplier<Solver>> factories) {
+        Map<String, Supplier<Solver>> result = new TreeMap<>();
+        for (Supplier<Solver> factory : factories) {
+            result.put(factory.get().toString(), factory);
         }
         return result;
     }